@@ -0,0 +1,321 @@
+package scheduler.service;
+
+import scheduler.db.ConnectionManager;
+import scheduler.db.TransactionManager;
+import scheduler.model.Caregiver;
+import scheduler.model.Patient;
+import scheduler.util.PasswordHash;
+import scheduler.util.PasswordPolicy;
+import scheduler.util.Util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+// Creates accounts in bulk from "username,password" lines. The file is worked through in
+// chunks: each chunk is checked against the password policy, usernames that already exist are
+// found with one IN query and dropped before any hashing, the remaining passwords are hashed in
+// parallel, and the accounts are inserted as one batch in one transaction. While a chunk is
+// being inserted the next one is already being read and hashed. Failures are reported by line
+// number and reason only, never with the contents of the file.
+public class AccountImporter {
+
+    // rows per chunk; stays below SQL Server's limit of 2100 parameters for the IN query
+    private static final int chunkSize = Math.min(Util.getIntEnv("ImportChunkSize", 500), 2000);
+    // tries for a chunk that collides with accounts created meanwhile before it is inserted row by row
+    private static final int chunkAttempts = 3;
+
+    public static class Result {
+        private int rows = 0;
+        private int imported = 0;
+        private final List<Failure> failures = Collections.synchronizedList(new ArrayList<>());
+        private double seconds;
+
+        // Getters
+        public int getRows() {
+            return rows;
+        }
+
+        public int getImported() {
+            return imported;
+        }
+
+        // in the order of the file
+        public List<Failure> getFailures() {
+            return failures;
+        }
+
+        public double getSeconds() {
+            return seconds;
+        }
+    }
+
+    public static class Failure {
+        private final int line;
+        private final String reason;
+
+        Failure(int line, String reason) {
+            this.line = line;
+            this.reason = reason;
+        }
+
+        // Getters
+        public int getLine() {
+            return line;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+            return "line " + line + ": " + reason;
+        }
+    }
+
+    private static class Row {
+        private final int line;
+        private final String username;
+        private final String password;
+        private byte[] hash;
+
+        Row(int line, String username, String password) {
+            this.line = line;
+            this.username = username;
+            this.password = password;
+        }
+    }
+
+    // imports patients if patients is true, caregivers otherwise
+    public static Result importAccounts(boolean patients, BufferedReader reader) throws IOException {
+        Result result = new Result();
+        long start = System.nanoTime();
+        ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "account-import-writer");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            Future<Integer> inserting = null;
+            Set<String> seen = new HashSet<>();
+            List<Row> chunk = new ArrayList<>();
+            int lineNumber = 0;
+            String line;
+            while (true) {
+                line = reader.readLine();
+                if (line != null) {
+                    lineNumber++;
+                    Row row = parse(lineNumber, line, seen, result);
+                    if (row != null) {
+                        chunk.add(row);
+                    }
+                    if (chunk.size() < chunkSize) {
+                        continue;
+                    }
+                }
+                if (!chunk.isEmpty()) {
+                    List<Row> ready = prepare(patients, chunk, result);
+                    // the previous chunk has to be in before the next one starts
+                    result.imported += waitFor(inserting);
+                    inserting = ready.isEmpty() ? null : writer.submit(() -> insert(patients, ready, result));
+                    chunk = new ArrayList<>();
+                }
+                if (line == null) {
+                    break;
+                }
+            }
+            result.imported += waitFor(inserting);
+            // rows of a chunk fail in more than one place
+            result.failures.sort(Comparator.comparingInt(Failure::getLine));
+        } finally {
+            writer.shutdown();
+        }
+        result.seconds = (System.nanoTime() - start) / 1e9;
+        return result;
+    }
+
+    // returns the row, or null if the line is a header, blank or invalid
+    private static Row parse(int lineNumber, String line, Set<String> seen, Result result) {
+        if (line.trim().isEmpty()) {
+            return null;
+        }
+        String[] fields = line.split(",", -1);
+        if (fields.length != 2) {
+            result.rows++;
+            result.failures.add(new Failure(lineNumber, "expected username,password"));
+            return null;
+        }
+        String username = fields[0].trim();
+        String password = fields[1].trim();
+        if (lineNumber == 1 && username.equalsIgnoreCase("username")) {
+            return null;
+        }
+        result.rows++;
+        if (username.isEmpty() || username.length() > 255 || username.chars().anyMatch(Character::isWhitespace)) {
+            result.failures.add(new Failure(lineNumber, "invalid username"));
+        } else if (!seen.add(username)) {
+            result.failures.add(new Failure(lineNumber, "duplicate in file"));
+        } else if (!PasswordPolicy.getDefault().isStrong(password)) {
+            result.failures.add(new Failure(lineNumber, "password is weak"));
+        } else {
+            return new Row(lineNumber, username, password);
+        }
+        return null;
+    }
+
+    // drops the usernames that are taken and hashes the rest; returns the rows to insert
+    private static List<Row> prepare(boolean patients, List<Row> chunk, Result result) {
+        Set<String> existing;
+        try {
+            existing = existingUsernames(patients, chunk);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            for (Row row : chunk) {
+                result.failures.add(new Failure(row.line, "database error"));
+            }
+            return Collections.emptyList();
+        }
+        List<Row> ready = new ArrayList<>();
+        for (Row row : chunk) {
+            if (existing.contains(row.username)) {
+                result.failures.add(new Failure(row.line, "username taken"));
+            } else {
+                ready.add(row);
+            }
+        }
+        // hashing dominates, so it is spread over all cores
+        IntStream.range(0, ready.size()).parallel()
+                .forEach(i -> ready.get(i).hash = PasswordHash.create(ready.get(i).password).encode());
+        return ready;
+    }
+
+    private static Set<String> existingUsernames(boolean patients, List<Row> chunk) throws SQLException {
+        StringBuilder query = new StringBuilder("SELECT Username FROM ")
+                .append(patients ? "Patients" : "Caregivers").append(" WHERE Username IN (");
+        for (int i = 0; i < chunk.size(); i++) {
+            query.append(i == 0 ? "?" : ", ?");
+        }
+        query.append(')');
+
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        if (con == null) {
+            throw new SQLException("No database connection available");
+        }
+
+        Set<String> existing = new HashSet<>();
+        try (PreparedStatement statement = con.prepareStatement(query.toString())) {
+            for (int i = 0; i < chunk.size(); i++) {
+                statement.setString(i + 1, chunk.get(i).username);
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    existing.add(resultSet.getString(1));
+                }
+            }
+        } finally {
+            cm.closeConnection();
+        }
+        return existing;
+    }
+
+    // inserts the chunk in one transaction; returns how many accounts were created
+    private static int insert(boolean patients, List<Row> rows, Result result) {
+        boolean[] created = null;
+        for (int attempt = 1; created == null && attempt <= chunkAttempts; attempt++) {
+            try {
+                created = save(patients, rows);
+            } catch (SQLException e) {
+                // an account created by somebody else between the check and the insert rolls back
+                // the whole chunk; the next try skips it, since only absent usernames are inserted
+                if (!TransactionManager.isDuplicateKey(e)) {
+                    e.printStackTrace();
+                    for (Row row : rows) {
+                        result.failures.add(new Failure(row.line, "database error"));
+                    }
+                    return 0;
+                }
+            }
+        }
+        if (created == null) {
+            return insertEach(patients, rows, result);
+        }
+        int imported = 0;
+        for (int i = 0; i < created.length; i++) {
+            if (created[i]) {
+                imported++;
+            } else {
+                // created by somebody else since the check
+                result.failures.add(new Failure(rows.get(i).line, "username taken"));
+            }
+        }
+        return imported;
+    }
+
+    // inserts every row in a transaction of its own, so a collision only fails its own row;
+    // returns how many accounts were created
+    private static int insertEach(boolean patients, List<Row> rows, Result result) {
+        int imported = 0;
+        for (Row row : rows) {
+            try {
+                if (save(patients, Collections.singletonList(row))[0]) {
+                    imported++;
+                } else {
+                    result.failures.add(new Failure(row.line, "username taken"));
+                }
+            } catch (SQLException e) {
+                if (TransactionManager.isDuplicateKey(e)) {
+                    result.failures.add(new Failure(row.line, "username taken"));
+                } else {
+                    e.printStackTrace();
+                    result.failures.add(new Failure(row.line, "database error"));
+                }
+            }
+        }
+        return imported;
+    }
+
+    private static boolean[] save(boolean patients, List<Row> rows) throws SQLException {
+        if (patients) {
+            List<Patient> accounts = new ArrayList<>();
+            for (Row row : rows) {
+                accounts.add(new Patient.PatientBuilder(row.username, null, row.hash).build());
+            }
+            return Patient.saveAllToDB(accounts);
+        }
+        List<Caregiver> accounts = new ArrayList<>();
+        for (Row row : rows) {
+            accounts.add(new Caregiver.CaregiverBuilder(row.username, null, row.hash).build());
+        }
+        return Caregiver.saveAllToDB(accounts);
+    }
+
+    private static int waitFor(Future<Integer> inserting) throws IOException {
+        if (inserting == null) {
+            return 0;
+        }
+        try {
+            return inserting.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while importing", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Import failed", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package scheduler.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Hands out appointment IDs using hi/lo allocation: every value taken from the
+// AppointmentIdBlocks sequence reserves a block of blockSize IDs for this process, which
+// are then served from memory. Sequence values are never handed out twice, so IDs do not
+// collide across scheduler instances as long as they all use the same block size.
+public class AppointmentIdAllocator {
+
+    private static final String nextBlock = "SELECT NEXT VALUE FOR AppointmentIdBlocks";
+
+    private static class Block {
+        private final long end;
+        private final AtomicLong next;
+
+        Block(long start, long end) {
+            this.end = end;
+            this.next = new AtomicLong(start);
+        }
+    }
+
+    private final int blockSize;
+    private final AtomicReference<Block> current = new AtomicReference<>(new Block(0, 0));
+    private final Object refillLock = new Object();
+
+    public AppointmentIdAllocator(int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive!");
+        }
+        this.blockSize = blockSize;
+    }
+
+    // con is only used when the current block has run out
+    public int nextId(Connection con) throws SQLException {
+        while (true) {
+            Block block = current.get();
+            long id = block.next.getAndIncrement();
+            if (id < block.end) {
+                return (int) id;
+            }
+            synchronized (refillLock) {
+                // another thread may have refilled while we were waiting
+                if (current.get() == block) {
+                    current.set(fetchBlock(con));
+                }
+            }
+        }
+    }
+
+    private Block fetchBlock(Connection con) throws SQLException {
+        long hi;
+        try (PreparedStatement statement = con.prepareStatement(nextBlock);
+             ResultSet resultSet = statement.executeQuery()) {
+            if (!resultSet.next()) {
+                throw new SQLException("AppointmentIdBlocks sequence returned no value");
+            }
+            hi = resultSet.getLong(1);
+        }
+        // the sequence starts at 1, so block 0 stays free for appointments booked before it existed
+        long start = hi * blockSize;
+        long end = start + blockSize;
+        if (hi < 1 || end > Integer.MAX_VALUE) {
+            throw new SQLException("No appointment IDs left in block " + hi);
+        }
+        return new Block(start, end);
+    }
+}
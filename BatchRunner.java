@@ -0,0 +1,403 @@
+package scheduler;
+
+import scheduler.model.Caregiver;
+import scheduler.model.Patient;
+import scheduler.model.Vaccine;
+import scheduler.service.InventoryCache;
+import scheduler.service.SlotIndex;
+import scheduler.util.Metrics;
+import scheduler.util.PasswordHash;
+import scheduler.util.PasswordPolicy;
+import scheduler.util.Util;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.stream.IntStream;
+
+// Replays a file of commands as a single session, without greeting or prompts, and writes one
+// tab-separated result line per command: line number, command, outcome, how many commands
+// shared its transaction, latency in microseconds and the command's output.
+// A reader thread streams the file ahead of execution through a bounded queue, and consecutive
+// create_patient, create_caregiver, add_doses and single date upload_availability commands are
+// run together in one batched transaction instead of one round trip each. A grouped command
+// reports the same status and output it would have run on its own.
+public class BatchRunner {
+
+    // lines read ahead of the command being run
+    private static final int queueDepth = Util.getIntEnv("BatchQueueDepth", 1024);
+    // most commands run together in one transaction, 1 runs every command on its own
+    private static final int defaultGroupSize = Util.getIntEnv("BatchGroupSize", 500);
+
+    private static final String OK = "ok";
+    private static final String REJECTED = "rejected";
+    private static final String FAILED = "failed";
+
+    private static class Line {
+        private final int number;
+        private final String text;
+
+        Line(int number, String text) {
+            this.number = number;
+            this.text = text;
+        }
+    }
+
+    // a command waiting to run as part of a group, with its result once it has run
+    private static class Entry {
+        private final Line line;
+        private final String[] args;
+        private String status = OK;
+        private String output;
+
+        Entry(Line line, CommandLine commandLine) {
+            this.line = line;
+            this.args = new String[commandLine.size()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = commandLine.get(i);
+            }
+        }
+
+        void finish(String status, String output) {
+            this.status = status;
+            this.output = output;
+        }
+    }
+
+    // marks the end of the file on the queue
+    private static final Line END = new Line(-1, null);
+
+    private final BlockingQueue<Line> lines = new ArrayBlockingQueue<>(queueDepth);
+    private final ByteArrayOutputStream captured = new ByteArrayOutputStream();
+    private final Session session =
+            new Session(new PrintStream(captured, true, StandardCharsets.UTF_8));
+    private final PrintStream log;
+    private final int groupSize;
+    private volatile IOException readFailure;
+    private Line pending;
+    private int commandsRun = 0;
+
+    private BatchRunner(PrintStream log, int groupSize) {
+        this.log = log;
+        this.groupSize = groupSize;
+    }
+
+    // runs every command in the file, or until a quit, and writes the results to log
+    public static void run(Path file, PrintStream log) throws IOException {
+        run(file, log, defaultGroupSize);
+    }
+
+    static void run(Path file, PrintStream log, int groupSize) throws IOException {
+        new BatchRunner(log, groupSize).run(file);
+    }
+
+    private void run(Path file) throws IOException {
+        BufferedReader reader = Files.newBufferedReader(file);
+        Thread readerThread = new Thread(() -> read(reader), "batch-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+
+        long start = System.nanoTime();
+        log.println("# line\tcommand\tstatus\tgroup\tlatency_us\toutput");
+        try {
+            Line line;
+            while ((line = next()) != END && !session.isEnded()) {
+                // skip blank lines
+                CommandLine commandLine = session.getCommandLine().parse(line.text);
+                if (commandLine.size() == 0) {
+                    continue;
+                }
+                Command command = Scheduler.getCommands().find(commandLine);
+                if (isGroupable(command, commandLine)) {
+                    runGroup(command, new Entry(line, commandLine));
+                } else {
+                    runSingle(line);
+                }
+            }
+        } finally {
+            // stops the reader if a quit left part of the file unread
+            readerThread.interrupt();
+        }
+        if (readFailure != null) {
+            throw readFailure;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        log.println("# " + commandsRun + " commands in " + String.format("%.3f", seconds) + " s (" +
+                String.format("%.0f", commandsRun / Math.max(seconds, 1e-9)) + " commands/sec)");
+        log.flush();
+    }
+
+    private void read(BufferedReader reader) {
+        try (BufferedReader r = reader) {
+            int number = 0;
+            String text;
+            while ((text = r.readLine()) != null) {
+                lines.put(new Line(++number, text));
+            }
+        } catch (IOException e) {
+            readFailure = e;
+        } catch (InterruptedException e) {
+            return;
+        }
+        try {
+            lines.put(END);
+        } catch (InterruptedException e) {
+            // nobody is waiting for the rest of the file
+        }
+    }
+
+    private Line next() {
+        if (pending != null) {
+            Line line = pending;
+            pending = null;
+            return line;
+        }
+        try {
+            return lines.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return END;
+        }
+    }
+
+    private void runSingle(Line line) {
+        long start = System.nanoTime();
+        CommandRegistry.Outcome outcome = Scheduler.getCommands().dispatch(session, session.getCommandLine());
+        long micros = (System.nanoTime() - start) / 1000;
+        String status = outcome == CommandRegistry.Outcome.RAN ? OK
+                : outcome == CommandRegistry.Outcome.REJECTED ? REJECTED : FAILED;
+        writeResult(line, session.getCommandLine().get(0), status, 1, micros, takeOutput());
+    }
+
+    // commands that can share a transaction with the same command on the following lines
+    private boolean isGroupable(Command command, CommandLine commandLine) {
+        if (groupSize <= 1 || command == null || !CommandRegistry.isAllowed(session, command.getRole())
+                || !command.acceptsArgs(commandLine.size() - 1)) {
+            return false;
+        }
+        switch (command.getName()) {
+            case "create_patient":
+            case "create_caregiver":
+            case "add_doses":
+                return true;
+            case "upload_availability":
+                return commandLine.size() == 2;
+            default:
+                return false;
+        }
+    }
+
+    // collects the following lines running the same command, then runs them all at once
+    private void runGroup(Command command, Entry first) {
+        List<Entry> group = new ArrayList<>();
+        group.add(first);
+        while (group.size() < groupSize) {
+            Line line = next();
+            if (line == END) {
+                pending = END;
+                break;
+            }
+            CommandLine commandLine = session.getCommandLine().parse(line.text);
+            if (commandLine.size() == 0) {
+                continue;
+            }
+            if (!commandLine.tokenEquals(0, command.getName()) || !isGroupable(command, commandLine)) {
+                pending = line;
+                break;
+            }
+            group.add(new Entry(line, commandLine));
+        }
+
+        long start = System.nanoTime();
+        Metrics.begin(command.getName());
+        try {
+            switch (command.getName()) {
+                case "create_patient":
+                case "create_caregiver":
+                    createUsers(command.getName().equals("create_patient"), group);
+                    break;
+                case "add_doses":
+                    addDoses(group);
+                    break;
+                default:
+                    uploadAvailabilities(group);
+                    break;
+            }
+        } finally {
+            // the group is recorded as the commands it ran
+            int failures = 0;
+            for (Entry entry : group) {
+                if (FAILED.equals(entry.status)) {
+                    failures++;
+                }
+            }
+            Metrics.end(group.size(), failures);
+        }
+        // the transaction's time is shared evenly between its commands
+        long micros = (System.nanoTime() - start) / 1000 / group.size();
+        for (Entry entry : group) {
+            writeResult(entry.line, command.getName(), entry.status, group.size(), micros, entry.output);
+        }
+    }
+
+    private void createUsers(boolean patients, List<Entry> group) {
+        List<Entry> valid = new ArrayList<>();
+        for (Entry entry : group) {
+            if (!PasswordPolicy.getDefault().isStrong(entry.args[2])) {
+                entry.finish(OK, "Password is weak! Please choose a stronger password.");
+            } else {
+                valid.add(entry);
+            }
+        }
+        if (valid.isEmpty()) {
+            return;
+        }
+        // hashing dominates account creation, so the passwords are hashed in parallel
+        byte[][] hashes = new byte[valid.size()][];
+        IntStream.range(0, hashes.length).parallel()
+                .forEach(i -> hashes[i] = PasswordHash.create(valid.get(i).args[2]).encode());
+        try {
+            boolean[] created;
+            if (patients) {
+                List<Patient> users = new ArrayList<>();
+                for (int i = 0; i < hashes.length; i++) {
+                    users.add(new Patient.PatientBuilder(valid.get(i).args[1], null, hashes[i]).build());
+                }
+                created = Patient.saveAllToDB(users);
+            } else {
+                List<Caregiver> users = new ArrayList<>();
+                for (int i = 0; i < hashes.length; i++) {
+                    users.add(new Caregiver.CaregiverBuilder(valid.get(i).args[1], null, hashes[i]).build());
+                }
+                created = Caregiver.saveAllToDB(users);
+            }
+            for (int i = 0; i < created.length; i++) {
+                Entry entry = valid.get(i);
+                if (created[i]) {
+                    entry.finish(OK, "Created user " + entry.args[1]);
+                } else {
+                    entry.finish(OK, "Username taken, try again!");
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            finishAll(valid, "Failed to create user.");
+        }
+    }
+
+    private void addDoses(List<Entry> group) {
+        List<Entry> valid = new ArrayList<>();
+        // doses for the same vaccine are added up so every vaccine is updated once
+        Map<String, Integer> doses = new LinkedHashMap<>();
+        for (Entry entry : group) {
+            int count;
+            try {
+                count = Integer.parseInt(entry.args[2]);
+            } catch (NumberFormatException e) {
+                // the console's handler throws on it
+                entry.finish(FAILED, "Please try again!");
+                continue;
+            }
+            if (count <= 0) {
+                entry.finish(OK, "Please try again!");
+                continue;
+            }
+            valid.add(entry);
+            doses.merge(entry.args[1], count, Integer::sum);
+        }
+        if (valid.isEmpty()) {
+            return;
+        }
+        try {
+            Vaccine.addDosesToDB(doses);
+            doses.forEach(InventoryCache::recordCommitted);
+            for (Entry entry : valid) {
+                entry.finish(OK, "Doses updated!");
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            finishAll(valid, "Error occurred when adding doses");
+        }
+    }
+
+    private void uploadAvailabilities(List<Entry> group) {
+        List<Entry> valid = new ArrayList<>();
+        List<Date> dates = new ArrayList<>();
+        for (Entry entry : group) {
+            try {
+                dates.add(Date.valueOf(entry.args[1]));
+                valid.add(entry);
+            } catch (IllegalArgumentException e) {
+                entry.finish(OK, "Please enter a valid date!");
+            }
+        }
+        if (valid.isEmpty()) {
+            return;
+        }
+        try {
+            boolean[] inserted = session.getCurrentCaregiver().uploadAvailabilities(dates);
+            for (int i = 0; i < inserted.length; i++) {
+                Entry entry = valid.get(i);
+                if (inserted[i]) {
+                    SlotIndex.addFree(dates.get(i), session.getCurrentCaregiver().getUsername());
+                    entry.finish(OK, "Availability uploaded!");
+                } else {
+                    // the console's single insert fails on an uploaded date, so the replay does too
+                    entry.finish(OK, "Error occurred when uploading availability");
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            finishAll(valid, "Error occurred when uploading availability");
+        }
+    }
+
+    // the console's handlers print a database error and return, so the commands still ran
+    private static void finishAll(List<Entry> entries, String output) {
+        for (Entry entry : entries) {
+            entry.finish(OK, output);
+        }
+    }
+
+    private String takeOutput() {
+        String output = captured.toString(StandardCharsets.UTF_8).trim();
+        captured.reset();
+        return output;
+    }
+
+    private void writeResult(Line line, String command, String status, int group, long micros, String output) {
+        commandsRun++;
+        log.println(line.number + "\t" + command + "\t" + status + "\t" + group + "\t" + micros + "\t" +
+                escape(output));
+    }
+
+    // keeps every result on one line
+    private static String escape(String output) {
+        StringBuilder escaped = new StringBuilder(output.length());
+        for (int i = 0; i < output.length(); i++) {
+            char c = output.charAt(i);
+            if (c == '\n') {
+                escaped.append("\\n");
+            } else if (c == '\t') {
+                escaped.append("\\t");
+            } else if (c == '\\') {
+                escaped.append("\\\\");
+            } else if (c != '\r') {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
@@ -1,12 +1,17 @@
 package scheduler.model;
 
 import scheduler.db.ConnectionManager;
+import scheduler.db.TransactionManager;
+import scheduler.util.PasswordHash;
 import scheduler.util.Util;
 
 import java.sql.*;
-import java.util.Arrays;
+import java.util.List;
 
 public class Caregiver {
+    // rows sent per JDBC batch when uploading many availabilities at once
+    private static final int uploadBatchSize = Util.getIntEnv("UploadBatchSize", 500);
+
     private final String username;
     private final byte[] salt;
     private final byte[] hash;
@@ -36,18 +41,23 @@ public class Caregiver {
         return hash;
     }
 
-    public void saveToDB() throws SQLException {
+    // a single insert, so two signups with the same username cannot both succeed; returns false
+    // if the username is already taken
+    public boolean saveToDB() throws SQLException {
         ConnectionManager cm = new ConnectionManager();
         Connection con = cm.createConnection();
 
         String addCaregiver = "INSERT INTO Caregivers VALUES (? , ?, ?)";
-        try {
-            PreparedStatement statement = con.prepareStatement(addCaregiver);
+        try (PreparedStatement statement = con.prepareStatement(addCaregiver)) {
             statement.setString(1, this.username);
             statement.setBytes(2, this.salt);
             statement.setBytes(3, this.hash);
             statement.executeUpdate();
+            return true;
         } catch (SQLException e) {
+            if (TransactionManager.isDuplicateKey(e)) {
+                return false;
+            }
             throw new SQLException();
         } finally {
             cm.closeConnection();
@@ -59,8 +69,7 @@ public class Caregiver {
         Connection con = cm.createConnection();
 
         String addAvailability = "INSERT INTO Availabilities VALUES (? , ?)";
-        try {
-            PreparedStatement statement = con.prepareStatement(addAvailability);
+        try (PreparedStatement statement = con.prepareStatement(addAvailability)) {
             statement.setDate(1, d);
             statement.setString(2, this.username);
             statement.executeUpdate();
@@ -71,6 +80,64 @@ public class Caregiver {
         }
     }
 
+    // uploads all the dates in a single transaction, sending them in batches of uploadBatchSize rows;
+    // dates the caregiver already uploaded, also earlier in the list, are skipped instead of failing
+    // the upload. Returns for every date whether it was new.
+    public boolean[] uploadAvailabilities(List<Date> dates) throws SQLException {
+        String addAvailability = "INSERT INTO Availabilities (Time, Username) SELECT ?, ? " +
+                "WHERE NOT EXISTS (SELECT 1 FROM Availabilities WHERE Time = ? AND Username = ?)";
+        return TransactionManager.run(con -> {
+            boolean[] inserted = new boolean[dates.size()];
+            try (PreparedStatement statement = con.prepareStatement(addAvailability)) {
+                int sent = 0;
+                for (int i = 0; i < dates.size(); i++) {
+                    Date d = dates.get(i);
+                    statement.setDate(1, d);
+                    statement.setString(2, this.username);
+                    statement.setDate(3, d);
+                    statement.setString(4, this.username);
+                    statement.addBatch();
+                    if (i + 1 - sent == uploadBatchSize || i + 1 == dates.size()) {
+                        markInserted(statement.executeBatch(), inserted, sent);
+                        sent = i + 1;
+                    }
+                }
+            }
+            return inserted;
+        });
+    }
+
+    // saves all the caregivers in a single transaction, sending them as one JDBC batch; a username
+    // that is already taken, also by an earlier entry of the list, is skipped instead of failing the
+    // others. Returns for every caregiver whether it was created.
+    public static boolean[] saveAllToDB(List<Caregiver> caregivers) throws SQLException {
+        String addCaregiver = "INSERT INTO Caregivers (Username, Salt, Hash) SELECT ?, ?, ? " +
+                "WHERE NOT EXISTS (SELECT 1 FROM Caregivers WHERE Username = ?)";
+        return TransactionManager.run(con -> {
+            try (PreparedStatement statement = con.prepareStatement(addCaregiver)) {
+                for (Caregiver caregiver : caregivers) {
+                    statement.setString(1, caregiver.username);
+                    statement.setBytes(2, caregiver.salt);
+                    statement.setBytes(3, caregiver.hash);
+                    statement.setString(4, caregiver.username);
+                    statement.addBatch();
+                }
+                int[] updateCounts = statement.executeBatch();
+                boolean[] created = new boolean[updateCounts.length];
+                for (int i = 0; i < updateCounts.length; i++) {
+                    created[i] = updateCounts[i] > 0 || updateCounts[i] == Statement.SUCCESS_NO_INFO;
+                }
+                return created;
+            }
+        });
+    }
+
+    private static void markInserted(int[] updateCounts, boolean[] inserted, int offset) {
+        for (int i = 0; i < updateCounts.length; i++) {
+            inserted[offset + i] = updateCounts[i] > 0 || updateCounts[i] == Statement.SUCCESS_NO_INFO;
+        }
+    }
+
     public static class CaregiverBuilder {
         private final String username;
         private final byte[] salt;
@@ -103,31 +170,52 @@ public class Caregiver {
             Connection con = cm.createConnection();
 
             String getCaregiver = "SELECT Salt, Hash FROM Caregivers WHERE Username = ?";
-            try {
-                PreparedStatement statement = con.prepareStatement(getCaregiver);
+            try (PreparedStatement statement = con.prepareStatement(getCaregiver)) {
                 statement.setString(1, this.username);
                 ResultSet resultSet = statement.executeQuery();
-                while (resultSet.next()) {
-                    byte[] salt = resultSet.getBytes("Salt");
-                    // we need to call Util.trim() to get rid of the paddings,
-                    // try to remove the use of Util.trim() and you'll see :)
-                    byte[] hash = Util.trim(resultSet.getBytes("Hash"));
-                    // check if the password matches
-                    byte[] calculatedHash = Util.generateHash(password, salt);
-                    if (!Arrays.equals(hash, calculatedHash)) {
-                        return null;
-                    } else {
-                        this.salt = salt;
-                        this.hash = hash;
-                        return new Caregiver(this);
+                if (!resultSet.next()) {
+                    return null;
+                }
+                byte[] salt = resultSet.getBytes("Salt");
+                byte[] hash = resultSet.getBytes("Hash");
+                // hashes stored before PasswordHash records existed are verified the old way
+                PasswordHash stored = PasswordHash.decode(hash);
+                boolean matches = stored != null
+                        ? stored.matches(password)
+                        : PasswordHash.matchesLegacy(password, salt, hash);
+                if (!matches) {
+                    return null;
+                }
+                // upgrade outdated hashes now that we know the password
+                if (stored == null || stored.needsRehash()) {
+                    byte[] upgraded = PasswordHash.create(password).encode();
+                    if (replaceHash(con, hash, upgraded)) {
+                        salt = null;
+                        hash = upgraded;
                     }
                 }
-                return null;
+                this.salt = salt;
+                this.hash = hash;
+                return new Caregiver(this);
             } catch (SQLException e) {
                 throw new SQLException();
             } finally {
                 cm.closeConnection();
             }
         }
+
+        // only replaces the hash if it is still the one we verified against
+        private boolean replaceHash(Connection con, byte[] oldHash, byte[] newHash) {
+            String updateHash = "UPDATE Caregivers SET Salt = NULL, Hash = ? WHERE Username = ? AND Hash = ?";
+            try (PreparedStatement statement = con.prepareStatement(updateHash)) {
+                statement.setBytes(1, newHash);
+                statement.setString(2, this.username);
+                statement.setBytes(3, oldHash);
+                return statement.executeUpdate() == 1;
+            } catch (SQLException e) {
+                // the old hash still works, so the login does not fail over this
+                return false;
+            }
+        }
     }
 }
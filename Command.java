@@ -0,0 +1,115 @@
+package scheduler;
+
+// A command the scheduler understands: its name, how many arguments it takes, which kind of
+// user may run it and the handler that does the work. CommandRegistry checks the role and
+// the arguments before the handler is called.
+public class Command {
+
+    public enum Role {
+        ANY(null),
+        LOGGED_OUT("User already logged in."),
+        LOGGED_IN("Please login first!"),
+        PATIENT("Please login as a patient first!"),
+        CAREGIVER("Please login as a caregiver first!"),
+        // the console or a batch file, never a network client
+        LOCAL("Only available on the local console.");
+
+        private final String deniedMessage;
+
+        Role(String deniedMessage) {
+            this.deniedMessage = deniedMessage;
+        }
+
+        public String getDeniedMessage() {
+            return deniedMessage;
+        }
+    }
+
+    public interface Handler {
+        void handle(Session session, CommandLine args);
+    }
+
+    private final String name;
+    private final int minArgs;
+    private final int maxArgs;
+    private final Role role;
+    private final String usageError;
+    private final Handler handler;
+
+    private Command(CommandBuilder builder) {
+        this.name = builder.name;
+        this.minArgs = builder.minArgs;
+        this.maxArgs = builder.maxArgs;
+        this.role = builder.role;
+        this.usageError = builder.usageError;
+        this.handler = builder.handler;
+    }
+
+    // Getters
+    public String getName() {
+        return name;
+    }
+
+    public int getMinArgs() {
+        return minArgs;
+    }
+
+    public int getMaxArgs() {
+        return maxArgs;
+    }
+
+    public Role getRole() {
+        return role;
+    }
+
+    public String getUsageError() {
+        return usageError;
+    }
+
+    public Handler getHandler() {
+        return handler;
+    }
+
+    public boolean acceptsArgs(int count) {
+        return count >= minArgs && count <= maxArgs;
+    }
+
+    public static class CommandBuilder {
+        private final String name;
+        private final Handler handler;
+        private int minArgs = 0;
+        private int maxArgs = 0;
+        private Role role = Role.ANY;
+        private String usageError = "Please try again!";
+
+        public CommandBuilder(String name, Handler handler) {
+            this.name = name;
+            this.handler = handler;
+        }
+
+        public CommandBuilder args(int count) {
+            return args(count, count);
+        }
+
+        public CommandBuilder args(int min, int max) {
+            this.minArgs = min;
+            this.maxArgs = max;
+            return this;
+        }
+
+        public CommandBuilder role(Role role) {
+            this.role = role;
+            return this;
+        }
+
+        // printed when the command is given the wrong number of arguments
+        public CommandBuilder usageError(String usageError) {
+            this.usageError = usageError;
+            return this;
+        }
+
+        public Command build() {
+            return new Command(this);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package scheduler;
+
+import java.util.Arrays;
+
+// Splits a command line into whitespace-separated tokens. Only token boundaries are
+// recorded, in arrays reused from line to line, so parsing allocates nothing; a token is
+// turned into a String only when a handler asks for it.
+public class CommandLine {
+    private String line = "";
+    private int[] starts = new int[8];
+    private int[] ends = new int[8];
+    private int size = 0;
+
+    public CommandLine parse(String line) {
+        this.line = line;
+        this.size = 0;
+        int length = line.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && Character.isWhitespace(line.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+            int start = i;
+            while (i < length && !Character.isWhitespace(line.charAt(i))) {
+                i++;
+            }
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+            }
+            starts[size] = start;
+            ends[size] = i;
+            size++;
+        }
+        return this;
+    }
+
+    // the number of tokens, including the command name
+    public int size() {
+        return size;
+    }
+
+    // token 0 is the command name, the arguments follow
+    public String get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Token " + index + " out of " + size);
+        }
+        return line.substring(starts[index], ends[index]);
+    }
+
+    // compares a token without creating a String for it
+    public boolean tokenEquals(int index, String value) {
+        if (index < 0 || index >= size) {
+            return false;
+        }
+        int length = ends[index] - starts[index];
+        return length == value.length() && line.regionMatches(starts[index], value, 0, length);
+    }
+
+    public int tokenLength(int index) {
+        return index < 0 || index >= size ? 0 : ends[index] - starts[index];
+    }
+
+    public String getLine() {
+        return line;
+    }
+}
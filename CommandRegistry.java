@@ -0,0 +1,110 @@
+package scheduler;
+
+import scheduler.util.Metrics;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+// Maps command names to commands and runs them after checking the session's role and the
+// number of arguments.
+public class CommandRegistry {
+
+    // how a dispatched line ended: the handler ran, the line was refused before running
+    // (unknown command, wrong role or arguments) or the handler threw
+    public enum Outcome {
+        RAN,
+        REJECTED,
+        FAILED
+    }
+
+    // commands bucketed by name length, so a lookup compares against very few names
+    private final List<List<Command>> byLength = new ArrayList<>();
+
+    public synchronized void register(Command command) {
+        int length = command.getName().length();
+        while (byLength.size() <= length) {
+            byLength.add(new ArrayList<>());
+        }
+        List<Command> bucket = byLength.get(length);
+        bucket.removeIf(c -> c.getName().equals(command.getName()));
+        bucket.add(command);
+    }
+
+    // finds the command named by the first token, or null
+    public Command find(CommandLine line) {
+        if (line.size() == 0) {
+            return null;
+        }
+        int length = line.tokenLength(0);
+        if (length >= byLength.size()) {
+            return null;
+        }
+        for (Command command : byLength.get(length)) {
+            if (line.tokenEquals(0, command.getName())) {
+                return command;
+            }
+        }
+        return null;
+    }
+
+    public Outcome dispatch(Session session, CommandLine line) {
+        PrintStream out = session.getOut();
+        // check if input exists
+        if (line.size() == 0) {
+            out.println("Please try again!");
+            return Outcome.REJECTED;
+        }
+        Command command = find(line);
+        if (command == null) {
+            out.println("Invalid operation name!");
+            return Outcome.REJECTED;
+        }
+        // check 1: the logged-in user needs to be allowed to run the command
+        if (!isAllowed(session, command.getRole())) {
+            // a patient-only command tells a logged-out user to log in at all first
+            Command.Role denied = command.getRole() == Command.Role.PATIENT && !session.isLoggedIn()
+                    ? Command.Role.LOGGED_IN : command.getRole();
+            out.println(denied.getDeniedMessage());
+            Metrics.recordRejected(command.getName());
+            return Outcome.REJECTED;
+        }
+        // check 2: the number of arguments needs to match
+        if (!command.acceptsArgs(line.size() - 1)) {
+            out.println(command.getUsageError());
+            Metrics.recordRejected(command.getName());
+            return Outcome.REJECTED;
+        }
+        Metrics.begin(command.getName());
+        boolean failed = true;
+        try {
+            command.getHandler().handle(session, line);
+            failed = false;
+            return Outcome.RAN;
+        } catch (RuntimeException e) {
+            // e.g. a malformed number, the session keeps going
+            out.println("Please try again!");
+            e.printStackTrace();
+            return Outcome.FAILED;
+        } finally {
+            Metrics.end(failed);
+        }
+    }
+
+    static boolean isAllowed(Session session, Command.Role role) {
+        switch (role) {
+            case LOGGED_OUT:
+                return !session.isLoggedIn();
+            case LOGGED_IN:
+                return session.isLoggedIn();
+            case PATIENT:
+                return session.getCurrentPatient() != null;
+            case CAREGIVER:
+                return session.getCurrentCaregiver() != null;
+            case LOCAL:
+                return session.isLocal();
+            default:
+                return true;
+        }
+    }
+}
@@ -1,37 +1,130 @@
 package scheduler.db;
 
+import scheduler.util.Metrics;
+
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.ToDoubleFunction;
 
 public class ConnectionManager {
 
-    private final String driverName = "com.microsoft.sqlserver.jdbc.SQLServerDriver";
-    private final String connectionUrl = "jdbc:sqlserver://" + System.getenv("Server") +
-            ".database.windows.net:1433;database=" + System.getenv("DBName");
-    private final String userName = System.getenv("UserID");
-    private final String userPass = System.getenv("Password");
+    // where to connect, see DataSourceConfig; read from the environment unless configured
+    private static DataSourceConfig config = null;
+
+    // the pool is shared by every ConnectionManager in the process
+    private static ConnectionPool pool = null;
+    // databases the schema was applied to; an in-memory database outlives its pool, and running
+    // the schema a second time would fail on the tables that exist
+    private static final Set<String> schemaApplied = new HashSet<>();
 
     private Connection con = null;
 
+    // the pool's counters start over whenever a new pool is created
+    static {
+        Metrics.registerCounter("scheduler_pool_hits_total", "Borrows served by an idle pooled connection.",
+                () -> poolValue(ConnectionPool::getHits));
+        Metrics.registerCounter("scheduler_pool_misses_total", "Borrows that had to open a new connection.",
+                () -> poolValue(ConnectionPool::getMisses));
+        Metrics.registerCounter("scheduler_pool_timeouts_total", "Borrows that gave up waiting for a connection.",
+                () -> poolValue(ConnectionPool::getTimeouts));
+        Metrics.registerCounter("scheduler_pool_validation_failures_total",
+                "Idle connections found broken before reuse.", () -> poolValue(ConnectionPool::getValidationFailures));
+        Metrics.registerCounter("scheduler_pool_wait_seconds_total", "Time spent waiting to borrow a connection.",
+                () -> poolValue(ConnectionPool::getTotalWaitMillis) / 1000.0);
+        Metrics.registerGauge("scheduler_pool_wait_average_ms", "Average wait to borrow a connection.",
+                () -> poolValue(ConnectionPool::getAverageWaitMillis));
+        Metrics.registerGauge("scheduler_pool_open_connections", "Connections the pool holds open.",
+                () -> poolValue(ConnectionPool::getOpenConnections));
+        Metrics.registerGauge("scheduler_pool_idle_connections", "Open connections not borrowed.",
+                () -> poolValue(ConnectionPool::getIdleConnections));
+        Metrics.registerCounter("scheduler_statement_cache_hits_total", "Prepared statements reused from the cache.",
+                () -> poolValue(ConnectionPool::getStatementCacheHits));
+        Metrics.registerCounter("scheduler_statement_cache_misses_total", "Statements that had to be prepared.",
+                () -> poolValue(ConnectionPool::getStatementCacheMisses));
+    }
+
     public ConnectionManager() {
-        try {
-            Class.forName(driverName);
-        } catch (ClassNotFoundException e) {
-            System.out.println(e.toString());
+    }
+
+    // replaces the data source; takes effect once the current pool, if any, is shut down
+    public static synchronized void configure(DataSourceConfig dataSource) {
+        config = dataSource;
+    }
+
+    public static synchronized DataSourceConfig getConfig() {
+        if (config == null) {
+            config = DataSourceConfig.fromEnvironment();
+        }
+        return config;
+    }
+
+    public static synchronized ConnectionPool getPool() {
+        if (pool == null) {
+            DataSourceConfig dataSource = getConfig();
+            if (dataSource.getDriver() != null) {
+                try {
+                    Class.forName(dataSource.getDriver());
+                } catch (ClassNotFoundException e) {
+                    System.out.println(e.toString());
+                }
+            }
+            ConnectionPool created = new ConnectionPool(dataSource.getUrl(), dataSource.getUser(),
+                    dataSource.getPassword(), dataSource.getMinPoolSize(), dataSource.getMaxPoolSize(),
+                    dataSource.getIdleTimeoutMillis(), dataSource.getBorrowTimeoutMillis(),
+                    dataSource.getValidationWindowMillis(), dataSource.getStatementCacheSize());
+            // the schema has to exist before anybody gets a connection; without it every
+            // command would fail later on, so the pool is not handed out at all
+            if (dataSource.getSchemaFile() != null && !schemaApplied.contains(dataSource.getUrl())) {
+                Connection con;
+                try {
+                    con = created.borrow();
+                } catch (SQLException e) {
+                    created.close();
+                    throw new IllegalStateException("Could not connect to " + dataSource.getUrl() +
+                            " to apply schema " + dataSource.getSchemaFile(), e);
+                }
+                try (Connection c = con) {
+                    dataSource.applySchema(c);
+                } catch (SQLException e) {
+                    created.close();
+                    throw new IllegalStateException("Could not apply schema " + dataSource.getSchemaFile(), e);
+                }
+                schemaApplied.add(dataSource.getUrl());
+            }
+            pool = created;
+        }
+        return pool;
+    }
+
+    // a figure of the current pool, 0 while there is none
+    private static synchronized double poolValue(ToDoubleFunction<ConnectionPool> figure) {
+        return pool == null ? 0 : figure.applyAsDouble(pool);
+    }
+
+    // closes every pooled connection, e.g. when the application quits
+    public static synchronized void shutdown() {
+        if (pool != null) {
+            pool.close();
+            pool = null;
         }
     }
 
     public Connection createConnection() {
         try {
-            con = DriverManager.getConnection(connectionUrl, userName, userPass);
+            con = getPool().borrow();
         } catch (SQLException e) {
             e.printStackTrace();
         }
         return con;
     }
 
+    // returns the connection to the pool rather than closing it
     public void closeConnection() {
+        if (this.con == null) {
+            return;
+        }
         try {
             this.con.close();
         } catch (SQLException e) {
@@ -0,0 +1,252 @@
+package scheduler.db;
+
+import scheduler.util.Metrics;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ConnectionPool {
+
+    private final String connectionUrl;
+    private final String userName;
+    private final String userPass;
+
+    private final int minSize;
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final long borrowTimeoutMillis;
+    private final long validationWindowMillis;
+    private final int statementCacheSize;
+
+    // one permit per connection that may be handed out at the same time
+    private final Semaphore permits;
+    // idle connections, most recently used first so that cold ones age out at the tail
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger open = new AtomicInteger();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed = false;
+
+    // counters for monitoring the pool
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+
+    public ConnectionPool(String connectionUrl, String userName, String userPass, int minSize, int maxSize,
+                          long idleTimeoutMillis, long borrowTimeoutMillis, long validationWindowMillis,
+                          int statementCacheSize) {
+        if (maxSize <= 0 || minSize < 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        this.connectionUrl = connectionUrl;
+        this.userName = userName;
+        this.userPass = userPass;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.validationWindowMillis = validationWindowMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, idleTimeoutMillis / 2);
+        this.evictor.scheduleWithFixedDelay(this::maintain, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    public Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.increment();
+                throw new SQLTimeoutException("Timed out after " + borrowTimeoutMillis
+                        + " ms waiting for a database connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        } finally {
+            waitNanos.add(System.nanoTime() - start);
+        }
+
+        try {
+            PooledConnection pc;
+            while ((pc = idle.pollFirst()) != null) {
+                if (validate(pc)) {
+                    hits.increment();
+                    Metrics.recordConnection();
+                    return pc.lease();
+                }
+                validationFailures.increment();
+                discard(pc);
+            }
+            misses.increment();
+            Metrics.recordConnection();
+            return connect().lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    // called by a leased connection when it is closed by its user
+    void release(PooledConnection pc) {
+        try {
+            if (closed || pc.isBroken() || !pc.reset()) {
+                discard(pc);
+            } else {
+                pc.touch();
+                idle.offerFirst(pc);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private boolean validate(PooledConnection pc) {
+        // connections used within the validation window are trusted without a round trip
+        if (System.currentTimeMillis() - pc.getLastUsed() < validationWindowMillis) {
+            return true;
+        }
+        try {
+            return pc.getRawConnection().isValid(5);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PooledConnection connect() throws SQLException {
+        Connection raw = DriverManager.getConnection(connectionUrl, userName, userPass);
+        open.incrementAndGet();
+        return new PooledConnection(this, raw, statementCacheSize);
+    }
+
+    private void discard(PooledConnection pc) {
+        open.decrementAndGet();
+        pc.closeQuietly();
+    }
+
+    // evicts connections idle for too long and keeps at least minSize connections open
+    private void maintain() {
+        try {
+            long now = System.currentTimeMillis();
+            PooledConnection pc;
+            while (open.get() > minSize && (pc = idle.pollLast()) != null) {
+                if (now - pc.getLastUsed() < idleTimeoutMillis) {
+                    idle.offerLast(pc);
+                    break;
+                }
+                discard(pc);
+            }
+            while (!closed && open.get() < minSize && permits.tryAcquire()) {
+                try {
+                    PooledConnection fresh = connect();
+                    fresh.touch();
+                    idle.offerLast(fresh);
+                } finally {
+                    permits.release();
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            // the database may be unreachable right now, try again on the next run
+        }
+    }
+
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) {
+            discard(pc);
+        }
+    }
+
+    void recordStatementCacheHit() {
+        statementCacheHits.increment();
+    }
+
+    void recordStatementCacheMiss() {
+        statementCacheMisses.increment();
+    }
+
+    // Getters for the pool statistics
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    public long getValidationFailures() {
+        return validationFailures.sum();
+    }
+
+    public long getTotalWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(waitNanos.sum());
+    }
+
+    public double getAverageWaitMillis() {
+        long borrows = hits.sum() + misses.sum() + timeouts.sum();
+        return borrows == 0 ? 0.0 : waitNanos.sum() / 1_000_000.0 / borrows;
+    }
+
+    public long getStatementCacheHits() {
+        return statementCacheHits.sum();
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.sum();
+    }
+
+    public int getOpenConnections() {
+        return open.get();
+    }
+
+    public int getIdleConnections() {
+        return idle.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool{" +
+                "open=" + getOpenConnections() +
+                ", idle=" + getIdleConnections() +
+                ", max=" + maxSize +
+                ", hits=" + getHits() +
+                ", misses=" + getMisses() +
+                ", timeouts=" + getTimeouts() +
+                ", validationFailures=" + getValidationFailures() +
+                ", avgWaitMillis=" + String.format("%.3f", getAverageWaitMillis()) +
+                ", statementCacheHits=" + getStatementCacheHits() +
+                ", statementCacheMisses=" + getStatementCacheMisses() +
+                '}';
+    }
+}
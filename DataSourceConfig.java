@@ -0,0 +1,284 @@
+package scheduler.db;
+
+import scheduler.util.Util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+// Where the database is and how the pool talks to it. The DataSource environment variable picks
+// a profile:
+//   azure    (default) Azure SQL, from Server, DBName, UserID and Password
+//   embedded an in-memory H2 database in SQL Server mode, created from create.sql on startup;
+//            the H2 jar has to be on the classpath
+//   custom   any JDBC database, from DataSourceUrl, DataSourceDriver, DataSourceUser and
+//            DataSourcePassword
+// DataSourceSchema names a SQL file to run when the pool is created, for any profile. It is looked
+// up as a file first and then on the classpath, where the build puts create.sql; a schema that
+// is found in neither place is a configuration error.
+public class DataSourceConfig {
+
+    private static final String embeddedUrl = "jdbc:h2:mem:scheduler;MODE=MSSQLServer;DB_CLOSE_DELAY=-1";
+
+    private final String url;
+    private final String driver;
+    private final String user;
+    private final String password;
+    private final int minPoolSize;
+    private final int maxPoolSize;
+    private final int idleTimeoutMillis;
+    private final int borrowTimeoutMillis;
+    private final int validationWindowMillis;
+    private final int statementCacheSize;
+    private final String schemaFile;
+
+    private DataSourceConfig(DataSourceConfigBuilder builder) {
+        this.url = builder.url;
+        this.driver = builder.driver;
+        this.user = builder.user;
+        this.password = builder.password;
+        this.minPoolSize = builder.minPoolSize;
+        this.maxPoolSize = builder.maxPoolSize;
+        this.idleTimeoutMillis = builder.idleTimeoutMillis;
+        this.borrowTimeoutMillis = builder.borrowTimeoutMillis;
+        this.validationWindowMillis = builder.validationWindowMillis;
+        this.statementCacheSize = builder.statementCacheSize;
+        this.schemaFile = builder.schemaFile;
+    }
+
+    public static DataSourceConfig fromEnvironment() {
+        return fromEnvironment(Util.getStringEnv("DataSource", "azure"));
+    }
+
+    // the given profile, with everything else still from the environment
+    public static DataSourceConfig fromEnvironment(String profile) {
+        DataSourceConfigBuilder builder;
+        switch (profile) {
+            case "azure":
+                builder = new DataSourceConfigBuilder("jdbc:sqlserver://" + System.getenv("Server") +
+                        ".database.windows.net:1433;database=" + System.getenv("DBName"))
+                        .driver("com.microsoft.sqlserver.jdbc.SQLServerDriver")
+                        .credentials(System.getenv("UserID"), System.getenv("Password"));
+                break;
+            case "embedded":
+                builder = new DataSourceConfigBuilder(embeddedUrl)
+                        .driver("org.h2.Driver")
+                        .credentials("sa", "")
+                        .schema("create.sql");
+                break;
+            case "custom":
+                builder = new DataSourceConfigBuilder(System.getenv("DataSourceUrl"))
+                        .driver(System.getenv("DataSourceDriver"))
+                        .credentials(System.getenv("DataSourceUser"), System.getenv("DataSourcePassword"));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown DataSource profile: " + profile);
+        }
+        // pool settings, can be overridden through environment variables
+        return builder
+                .poolSize(Util.getIntEnv("PoolMinSize", 1), Util.getIntEnv("PoolMaxSize", 10))
+                .idleTimeoutMillis(Util.getIntEnv("PoolIdleTimeoutMs", 5 * 60 * 1000))
+                .borrowTimeoutMillis(Util.getIntEnv("PoolBorrowTimeoutMs", 30 * 1000))
+                .validationWindowMillis(Util.getIntEnv("PoolValidationWindowMs", 1000))
+                .statementCacheSize(Util.getIntEnv("StatementCacheSize", 32))
+                .schema(Util.getStringEnv("DataSourceSchema", builder.schemaFile))
+                .build();
+    }
+
+    // runs the schema file, if there is one, statement by statement
+    void applySchema(Connection con) throws SQLException {
+        if (schemaFile == null) {
+            return;
+        }
+        List<String> statements;
+        try {
+            statements = splitStatements(readSchema(schemaFile));
+        } catch (IOException e) {
+            throw new SQLException("Could not read schema file " + schemaFile, e);
+        }
+        try (Statement statement = con.createStatement()) {
+            for (String sql : statements) {
+                try {
+                    statement.execute(sql);
+                } catch (SQLException e) {
+                    // indexes only matter for speed, and their options differ between databases
+                    if (!sql.regionMatches(true, 0, "CREATE INDEX", 0, "CREATE INDEX".length())) {
+                        throw e;
+                    }
+                    createPlainIndex(statement, sql, e);
+                }
+            }
+        }
+    }
+
+    private static String readSchema(String schemaFile) throws IOException {
+        if (Files.isRegularFile(Paths.get(schemaFile))) {
+            return new String(Files.readAllBytes(Paths.get(schemaFile)), StandardCharsets.UTF_8);
+        }
+        try (InputStream in = DataSourceConfig.class.getClassLoader().getResourceAsStream(schemaFile)) {
+            if (in == null) {
+                throw new IOException("Schema file " + schemaFile + " not found");
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static boolean schemaExists(String schemaFile) {
+        return Files.isRegularFile(Paths.get(schemaFile)) ||
+                DataSourceConfig.class.getClassLoader().getResource(schemaFile) != null;
+    }
+
+    // retries an index without its INCLUDE columns, and skips it if that fails as well
+    private static void createPlainIndex(Statement statement, String sql, SQLException cause) {
+        int include = sql.toUpperCase().indexOf(" INCLUDE");
+        try {
+            if (include < 0) {
+                throw cause;
+            }
+            statement.execute(sql.substring(0, include));
+        } catch (SQLException e) {
+            System.out.println("Skipped index the database does not support: " + e.getMessage());
+        }
+    }
+
+    // drops -- comments and splits the rest on semicolons
+    static List<String> splitStatements(String script) {
+        StringBuilder withoutComments = new StringBuilder();
+        for (String line : script.split("\r?\n")) {
+            int comment = line.indexOf("--");
+            withoutComments.append(comment < 0 ? line : line.substring(0, comment)).append('\n');
+        }
+        List<String> statements = new ArrayList<>();
+        for (String sql : withoutComments.toString().split(";")) {
+            if (!sql.trim().isEmpty()) {
+                statements.add(sql.trim());
+            }
+        }
+        return statements;
+    }
+
+    // Getters
+    public String getUrl() {
+        return url;
+    }
+
+    public String getDriver() {
+        return driver;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public int getMinPoolSize() {
+        return minPoolSize;
+    }
+
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    public int getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public int getBorrowTimeoutMillis() {
+        return borrowTimeoutMillis;
+    }
+
+    public int getValidationWindowMillis() {
+        return validationWindowMillis;
+    }
+
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    public String getSchemaFile() {
+        return schemaFile;
+    }
+
+    public static class DataSourceConfigBuilder {
+        private final String url;
+        private String driver;
+        private String user;
+        private String password;
+        private int minPoolSize = 1;
+        private int maxPoolSize = 10;
+        private int idleTimeoutMillis = 5 * 60 * 1000;
+        private int borrowTimeoutMillis = 30 * 1000;
+        private int validationWindowMillis = 1000;
+        private int statementCacheSize = 32;
+        private String schemaFile;
+
+        public DataSourceConfigBuilder(String url) {
+            this.url = url;
+        }
+
+        // the driver class to load, not needed for drivers that register themselves
+        public DataSourceConfigBuilder driver(String driver) {
+            this.driver = driver;
+            return this;
+        }
+
+        public DataSourceConfigBuilder credentials(String user, String password) {
+            this.user = user;
+            this.password = password;
+            return this;
+        }
+
+        public DataSourceConfigBuilder poolSize(int min, int max) {
+            this.minPoolSize = min;
+            this.maxPoolSize = max;
+            return this;
+        }
+
+        public DataSourceConfigBuilder idleTimeoutMillis(int idleTimeoutMillis) {
+            this.idleTimeoutMillis = idleTimeoutMillis;
+            return this;
+        }
+
+        public DataSourceConfigBuilder borrowTimeoutMillis(int borrowTimeoutMillis) {
+            this.borrowTimeoutMillis = borrowTimeoutMillis;
+            return this;
+        }
+
+        public DataSourceConfigBuilder validationWindowMillis(int validationWindowMillis) {
+            this.validationWindowMillis = validationWindowMillis;
+            return this;
+        }
+
+        public DataSourceConfigBuilder statementCacheSize(int statementCacheSize) {
+            this.statementCacheSize = statementCacheSize;
+            return this;
+        }
+
+        // a SQL file run when the pool is created
+        public DataSourceConfigBuilder schema(String schemaFile) {
+            this.schemaFile = schemaFile;
+            return this;
+        }
+
+        public DataSourceConfig build() {
+            if (url == null || url.isEmpty()) {
+                throw new IllegalArgumentException("No database URL configured!");
+            }
+            if (schemaFile != null && !schemaExists(schemaFile)) {
+                throw new IllegalArgumentException("Schema file " + schemaFile +
+                        " not found in the working directory or on the classpath!");
+            }
+            return new DataSourceConfig(this);
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package scheduler.service;
+
+import scheduler.db.ConnectionManager;
+import scheduler.model.Vaccine;
+import scheduler.util.Util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ObjIntConsumer;
+
+// Keeps every vaccine and its dose count in memory, so existence checks and dose lookups do
+// not need a round trip. Doses added to an existing vaccine are collected as a delta and
+// written behind as Doses = Doses + ?, either every flushMillis or as soon as flushThreshold
+// doses are waiting; changes already committed to the database (a reservation taking a dose)
+// are applied to the cached count directly. The whole table is reloaded every refreshMillis,
+// so changes made by other scheduler instances show up after at most that long.
+public class InventoryCache {
+
+    // how often pending doses are written, 0 writes them right away
+    private static final int flushMillis = Util.getIntEnv("InventoryFlushMs", 1000);
+    // pending doses that trigger a write before the next scheduled one
+    private static final int flushThreshold = Util.getIntEnv("InventoryFlushThreshold", 1000);
+    private static final int refreshMillis = Util.getIntEnv("InventoryRefreshMs", 30000);
+
+    private static final String selectVaccines = "SELECT Name, Doses FROM Vaccines";
+    private static final String selectDoses = "SELECT Doses FROM Vaccines WHERE Name = ?";
+
+    private static class Stock {
+        // doses in the database as last seen
+        private final AtomicLong stored = new AtomicLong();
+        // doses added here and not written yet
+        private final LongAdder pending = new LongAdder();
+        // set when the stored count has to be read again
+        private volatile boolean stale = false;
+
+        long doses() {
+            return stored.get() + pending.sum();
+        }
+    }
+
+    // sorted by name, so listing the vaccines needs no sorting
+    private static final ConcurrentSkipListMap<String, Stock> stocks = new ConcurrentSkipListMap<>();
+    private static final AtomicLong pendingTotal = new AtomicLong();
+    private static final AtomicBoolean flushRequested = new AtomicBoolean();
+    // flushes and reloads never overlap, so neither can undo the other
+    private static final Object lock = new Object();
+    private static volatile long loadedAt = 0;
+    // set while counts are read from the database; a committed change applied meanwhile may or may
+    // not be in what was read, so the counts read are not trusted and read again on the next lookup
+    private static volatile boolean reading = false;
+    private static final AtomicLong changedWhileReading = new AtomicLong();
+    private static volatile boolean loaded = false;
+
+    private static final ScheduledThreadPoolExecutor flusher = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread t = new Thread(r, "inventory-flush");
+        t.setDaemon(true);
+        return t;
+    });
+
+    static {
+        if (flushMillis > 0) {
+            flusher.scheduleWithFixedDelay(InventoryCache::flushQuietly, flushMillis, flushMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // returns the doses left of the vaccine, or -1 if there is no such vaccine
+    public static int getDoses(String vaccineName) throws SQLException {
+        Stock stock = find(vaccineName);
+        return stock == null ? -1 : (int) Math.max(0, stock.doses());
+    }
+
+    public static boolean exists(String vaccineName) throws SQLException {
+        return find(vaccineName) != null;
+    }
+
+    // every vaccine with its doses, ordered by name
+    public static void forEach(ObjIntConsumer<String> vaccines) throws SQLException {
+        ensureLoaded();
+        for (Map.Entry<String, Stock> entry : stocks.entrySet()) {
+            vaccines.accept(entry.getKey(), (int) Math.max(0, entry.getValue().doses()));
+        }
+    }
+
+    // adds doses to the vaccine, creating it if it does not exist yet; a new vaccine is written
+    // right away, doses for an existing one are written behind
+    public static void addDoses(String vaccineName, int doses) throws SQLException {
+        if (doses <= 0) {
+            throw new IllegalArgumentException("Argument cannot be negative!");
+        }
+        Stock stock = find(vaccineName);
+        if (stock == null || flushMillis == 0) {
+            Vaccine.addDosesToDB(Collections.singletonMap(vaccineName, doses));
+            recordCommitted(vaccineName, doses);
+            return;
+        }
+        stock.pending.add(doses);
+        if (pendingTotal.addAndGet(doses) >= flushThreshold && flushRequested.compareAndSet(false, true)) {
+            flusher.execute(InventoryCache::flushQuietly);
+        }
+    }
+
+    // applies a change that is already committed to the database, e.g. a dose taken by a reservation;
+    // a vaccine the cache does not know yet, e.g. one just created, is listed right away with the
+    // delta as its doses and its exact count is read the next time it is looked up
+    public static void recordCommitted(String vaccineName, int delta) {
+        Stock stock = stocks.get(vaccineName);
+        if (stock == null) {
+            Stock added = new Stock();
+            added.stored.set(delta);
+            added.stale = true;
+            stock = stocks.putIfAbsent(vaccineName, added);
+            if (stock == null) {
+                return;
+            }
+        }
+        stock.stored.addAndGet(delta);
+        if (reading) {
+            changedWhileReading.incrementAndGet();
+        }
+    }
+
+    // writes the pending doses of every vaccine
+    public static void flush() throws SQLException {
+        flush(stocks.keySet());
+    }
+
+    // writes the pending doses of one vaccine; returns whether there were any
+    public static boolean flush(String vaccineName) throws SQLException {
+        return flush(Collections.singleton(vaccineName));
+    }
+
+    // the vaccine's doses are read from the database again the next time they are needed
+    public static void invalidate(String vaccineName) {
+        Stock stock = stocks.get(vaccineName);
+        if (stock != null) {
+            stock.stale = true;
+        }
+    }
+
+    // reloads the whole table the next time the cache is used
+    public static void invalidateAll() {
+        loadedAt = 0;
+        loaded = false;
+    }
+
+    // writes the pending doses and stops the scheduled writes
+    public static void shutdown() {
+        flusher.shutdown();
+        flushQuietly();
+    }
+
+    private static boolean flush(Collection<String> vaccineNames) throws SQLException {
+        synchronized (lock) {
+            Map<String, Integer> deltas = new LinkedHashMap<>();
+            for (String vaccineName : vaccineNames) {
+                Stock stock = stocks.get(vaccineName);
+                long delta = stock == null ? 0 : stock.pending.sum();
+                if (delta != 0) {
+                    deltas.put(vaccineName, Math.toIntExact(delta));
+                }
+            }
+            if (deltas.isEmpty()) {
+                return false;
+            }
+            // on failure the doses stay pending and are written with the next flush
+            Vaccine.addDosesToDB(deltas);
+            for (Map.Entry<String, Integer> entry : deltas.entrySet()) {
+                Stock stock = stocks.get(entry.getKey());
+                // doses added meanwhile stay pending
+                stock.pending.add(-entry.getValue());
+                stock.stored.addAndGet(entry.getValue());
+                pendingTotal.addAndGet(-entry.getValue());
+            }
+            return true;
+        }
+    }
+
+    private static void flushQuietly() {
+        flushRequested.set(false);
+        try {
+            flush();
+        } catch (SQLException | RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // finds the vaccine in the cache, asking the database if it is not there
+    private static Stock find(String vaccineName) throws SQLException {
+        ensureLoaded();
+        Stock stock = stocks.get(vaccineName);
+        if (stock != null && !stock.stale) {
+            return stock;
+        }
+        if (stock == null) {
+            // nothing is pending for a vaccine that is not cached, so no flush can interfere and
+            // the lookup needs no lock; whoever adds the vaccine first wins
+            int doses = selectDoses(vaccineName);
+            if (doses < 0) {
+                return null;
+            }
+            Stock found = new Stock();
+            found.stored.set(doses);
+            stock = stocks.putIfAbsent(vaccineName, found);
+            return stock == null ? found : stock;
+        }
+        // a stale vaccine may have doses being flushed, its count is read again under the lock
+        synchronized (lock) {
+            startReading();
+            try {
+                int doses = selectDoses(vaccineName);
+                if (doses < 0) {
+                    return stock;
+                }
+                stock = stocks.computeIfAbsent(vaccineName, name -> new Stock());
+                stock.stored.set(doses);
+                stock.stale = false;
+                return stock;
+            } finally {
+                finishReading();
+            }
+        }
+    }
+
+    private static void ensureLoaded() throws SQLException {
+        if (loaded && System.currentTimeMillis() - loadedAt < refreshMillis) {
+            return;
+        }
+        synchronized (lock) {
+            if (loaded && System.currentTimeMillis() - loadedAt < refreshMillis) {
+                return;
+            }
+            ConnectionManager cm = new ConnectionManager();
+            Connection con = cm.createConnection();
+            if (con == null) {
+                throw new SQLException("No database connection available");
+            }
+
+            Set<String> seen = new HashSet<>();
+            startReading();
+            try (PreparedStatement statement = con.prepareStatement(selectVaccines);
+                 ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    String vaccineName = resultSet.getString(1);
+                    Stock stock = stocks.computeIfAbsent(vaccineName, name -> new Stock());
+                    stock.stored.set(resultSet.getInt(2));
+                    stock.stale = false;
+                    seen.add(vaccineName);
+                }
+            } finally {
+                cm.closeConnection();
+                finishReading();
+            }
+            // vaccines that are gone, unless doses for them are still waiting to be written
+            stocks.entrySet().removeIf(entry -> !seen.contains(entry.getKey()) && entry.getValue().pending.sum() == 0);
+            loadedAt = System.currentTimeMillis();
+            loaded = true;
+        }
+    }
+
+    // only called with the lock held
+    private static void startReading() {
+        changedWhileReading.set(0);
+        reading = true;
+    }
+
+    private static void finishReading() {
+        reading = false;
+        if (changedWhileReading.get() > 0) {
+            for (Stock stock : stocks.values()) {
+                stock.stale = true;
+            }
+        }
+    }
+
+    private static int selectDoses(String vaccineName) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        if (con == null) {
+            throw new SQLException("No database connection available");
+        }
+
+        try (PreparedStatement statement = con.prepareStatement(selectDoses)) {
+            statement.setString(1, vaccineName);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getInt(1) : -1;
+            }
+        } finally {
+            cm.closeConnection();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package scheduler.util;
+
+import java.io.PrintStream;
+
+// Collects output lines and writes them out in chunks instead of one println per line.
+public class LineBuffer {
+    private static final int flushThreshold = 8192;
+
+    private final PrintStream out;
+    private final StringBuilder buffer = new StringBuilder();
+
+    public LineBuffer(PrintStream out) {
+        this.out = out;
+    }
+
+    public void println(String line) {
+        buffer.append(line).append(System.lineSeparator());
+        if (buffer.length() >= flushThreshold) {
+            flush();
+        }
+    }
+
+    public void flush() {
+        if (buffer.length() > 0) {
+            out.print(buffer);
+            buffer.setLength(0);
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,142 @@
+package scheduler.service;
+
+import scheduler.util.Metrics;
+import scheduler.util.PasswordHash;
+import scheduler.util.Util;
+
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Runs login verification (the credential lookup and the password hash) on a small
+// dedicated pool with a bounded queue. A burst of logins can then only keep that many
+// cores busy; once the queue is full, further logins are rejected right away instead of
+// piling up and slowing down everything else.
+public class LoginExecutor {
+
+    private static final int threads = Util.getIntEnv("LoginThreads",
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    private static final int queueDepth = Util.getIntEnv("LoginQueueDepth", 64);
+    private static final int timeoutMillis = Util.getIntEnv("LoginTimeoutMs", 10000);
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+            0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueDepth), r -> {
+                Thread t = new Thread(r, "login-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }, new ThreadPoolExecutor.AbortPolicy());
+
+    // counters for monitoring the executor
+    private static final LongAdder completed = new LongAdder();
+    private static final LongAdder rejected = new LongAdder();
+    private static final LongAdder queueWaitNanos = new LongAdder();
+    private static final LongAdder serviceNanos = new LongAdder();
+
+    static {
+        Metrics.registerCounter("scheduler_login_completed_total", "Logins verified.", LoginExecutor::getCompleted);
+        Metrics.registerCounter("scheduler_login_rejected_total", "Logins turned away because the queue was full.",
+                LoginExecutor::getRejected);
+        Metrics.registerGauge("scheduler_login_queued", "Logins waiting for a thread.", LoginExecutor::getQueueDepth);
+        Metrics.registerCounter("scheduler_login_queue_wait_seconds_total", "Time logins waited for a thread.",
+                () -> queueWaitNanos.sum() / 1e9);
+        Metrics.registerCounter("scheduler_login_service_seconds_total", "Time spent verifying logins.",
+                () -> serviceNanos.sum() / 1e9);
+        // queue wait against hashing cost, what a login costs apart from waiting
+        Metrics.registerGauge("scheduler_login_queue_wait_average_ms", "Average wait for a login thread.",
+                LoginExecutor::getAverageQueueWaitMillis);
+        Metrics.registerGauge("scheduler_login_service_average_ms", "Average time verifying a login.",
+                LoginExecutor::getAverageServiceMillis);
+        Metrics.registerGauge("scheduler_password_hash_average_ms", "Average time hashing a password to verify it.",
+                PasswordHash::getAverageHashMillis);
+    }
+
+    public interface Verification<T> {
+        T verify() throws SQLException;
+    }
+
+    // runs the verification on the login pool and waits for its result;
+    // throws RejectedExecutionException if the pool is saturated
+    public static <T> T submit(Verification<T> verification) throws SQLException {
+        long submitted = System.nanoTime();
+        Future<T> future;
+        try {
+            // the lookup's round trips and connection count for the login command
+            future = executor.submit(Metrics.propagate(() -> {
+                long started = System.nanoTime();
+                queueWaitNanos.add(started - submitted);
+                try {
+                    return verification.verify();
+                } finally {
+                    serviceNanos.add(System.nanoTime() - started);
+                    completed.increment();
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw e;
+        }
+
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new SQLException(cause);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new SQLException("Login timed out after " + timeoutMillis + " ms", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new SQLException("Interrupted while logging in", e);
+        }
+    }
+
+    // Getters for the executor statistics
+    public static long getCompleted() {
+        return completed.sum();
+    }
+
+    public static long getRejected() {
+        return rejected.sum();
+    }
+
+    public static int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public static double getAverageQueueWaitMillis() {
+        long n = completed.sum();
+        return n == 0 ? 0.0 : queueWaitNanos.sum() / 1_000_000.0 / n;
+    }
+
+    public static double getAverageServiceMillis() {
+        long n = completed.sum();
+        return n == 0 ? 0.0 : serviceNanos.sum() / 1_000_000.0 / n;
+    }
+
+    public static String getStats() {
+        return "LoginExecutor{" +
+                "threads=" + threads +
+                ", queued=" + getQueueDepth() +
+                ", completed=" + getCompleted() +
+                ", rejected=" + getRejected() +
+                ", avgQueueWaitMillis=" + String.format("%.3f", getAverageQueueWaitMillis()) +
+                ", avgServiceMillis=" + String.format("%.3f", getAverageServiceMillis()) +
+                ", avgHashMillis=" + String.format("%.3f", PasswordHash.getAverageHashMillis()) +
+                '}';
+    }
+}
@@ -0,0 +1,357 @@
+package scheduler.util;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+// Counts, per command, how often it ran, how often it failed or was rejected, how long it took
+// and how many database round trips, connections and rows read it needed. The database side is attributed
+// through a thread-local scope that is open while a command runs on the thread; a command handing
+// work to another thread, e.g. a login, passes its scope along with propagate. Work done on other
+// threads otherwise, e.g. background inventory flushes, is not attributed to any command.
+// Other parts register process-wide figures of their own, e.g. the connection pool's hits and
+// misses, which are read whenever the metrics are printed or written.
+// With MetricsFile set, everything is also written to that file every MetricsIntervalMs in the
+// Prometheus text format, e.g. for the node exporter's textfile collector.
+public class Metrics {
+
+    private static final String metricsFile = Util.getStringEnv("MetricsFile", null);
+    private static final int intervalMillis = Util.getIntEnv("MetricsIntervalMs", 60000);
+
+    // latency bucket bounds in seconds for the text format
+    private static final String[] exportedBounds = {"0.0001", "0.00025", "0.0005", "0.001", "0.0025", "0.005",
+            "0.01", "0.025", "0.05", "0.1", "0.25", "0.5", "1", "2.5", "5", "10"};
+
+    private static final Map<String, CommandStats> commands = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Scope> current = new ThreadLocal<>();
+    // in the order they were registered
+    private static final Map<String, Figure> figures = Collections.synchronizedMap(new LinkedHashMap<>());
+    private static final ScheduledExecutorService writer = startWriter();
+
+    public static class CommandStats {
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder roundTrips = new LongAdder();
+        private final LongAdder connections = new LongAdder();
+        private final LongAdder rowsRead = new LongAdder();
+        // microseconds
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        // Getters
+        public long getCount() {
+            return latency.getCount();
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        public long getRejected() {
+            return rejected.sum();
+        }
+
+        public long getRoundTrips() {
+            return roundTrips.sum();
+        }
+
+        public long getConnections() {
+            return connections.sum();
+        }
+
+        public long getRowsRead() {
+            return rowsRead.sum();
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+    }
+
+    // a value read when the metrics are printed or written
+    private static class Figure {
+        private final String name;
+        private final String help;
+        private final String type;
+        private final DoubleSupplier value;
+
+        Figure(String name, String help, String type, DoubleSupplier value) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.value = value;
+        }
+    }
+
+    // a total that only grows, e.g. connections borrowed; registering a name again replaces it
+    public static void registerCounter(String name, String help, DoubleSupplier value) {
+        figures.put(name, new Figure(name, help, "counter", value));
+    }
+
+    // a value that goes up and down, e.g. idle connections
+    public static void registerGauge(String name, String help, DoubleSupplier value) {
+        figures.put(name, new Figure(name, help, "gauge", value));
+    }
+
+    private static List<Figure> getFigures() {
+        synchronized (figures) {
+            return new ArrayList<>(figures.values());
+        }
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15
+                ? String.valueOf((long) value) : String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    // what the command running on this thread has done so far
+    private static class Scope {
+        private final String command;
+        private final long start = System.nanoTime();
+        private int roundTrips = 0;
+        private int connections = 0;
+        private long rowsRead = 0;
+        private boolean failed = false;
+
+        Scope(String command) {
+            this.command = command;
+        }
+    }
+
+    // starts attributing database work on this thread to a command
+    public static void begin(String command) {
+        current.set(new Scope(command));
+    }
+
+    // closes the scope opened by begin and records the command
+    public static void end(boolean failed) {
+        end(1, failed ? 1 : 0);
+    }
+
+    // closes the scope of several commands run together, e.g. a batch group, and records each of
+    // them with an even share of the time; a database error counts as at least one failure
+    public static void end(int commandsRun, int failures) {
+        Scope scope = current.get();
+        if (scope == null) {
+            return;
+        }
+        current.remove();
+        if (commandsRun == 0) {
+            return;
+        }
+        CommandStats stats = commands.computeIfAbsent(scope.command, c -> new CommandStats());
+        long share = (System.nanoTime() - scope.start) / 1000 / commandsRun;
+        for (int i = 0; i < commandsRun; i++) {
+            stats.latency.record(share);
+        }
+        stats.roundTrips.add(scope.roundTrips);
+        stats.connections.add(scope.connections);
+        stats.rowsRead.add(scope.rowsRead);
+        stats.errors.add(Math.max(failures, scope.failed ? 1 : 0));
+    }
+
+    // runs the task in the scope open on this thread now, wherever it is run; the thread that opened
+    // the scope has to wait for the task before it ends the scope
+    public static <T> Callable<T> propagate(Callable<T> task) {
+        Scope scope = current.get();
+        if (scope == null) {
+            return task;
+        }
+        return () -> {
+            Scope previous = current.get();
+            current.set(scope);
+            try {
+                return task.call();
+            } finally {
+                if (previous == null) {
+                    current.remove();
+                } else {
+                    current.set(previous);
+                }
+            }
+        };
+    }
+
+    // a command that was refused before it ran, e.g. for the wrong role
+    public static void recordRejected(String command) {
+        commands.computeIfAbsent(command, c -> new CommandStats()).rejected.increment();
+    }
+
+    public static void recordRoundTrip() {
+        Scope scope = current.get();
+        if (scope != null) {
+            scope.roundTrips++;
+        }
+    }
+
+    public static void recordConnection() {
+        Scope scope = current.get();
+        if (scope != null) {
+            scope.connections++;
+        }
+    }
+
+    public static void recordRowsRead(long rows) {
+        Scope scope = current.get();
+        if (scope != null) {
+            scope.rowsRead += rows;
+        }
+    }
+
+    // the command running on this thread, or null
+    public static String getCurrentCommand() {
+        Scope scope = current.get();
+        return scope == null ? null : scope.command;
+    }
+
+    // a database error the command may have handled itself, it still counts as a failure
+    public static void recordError() {
+        Scope scope = current.get();
+        if (scope != null) {
+            scope.failed = true;
+        }
+    }
+
+    public static Map<String, CommandStats> getCommands() {
+        return new TreeMap<>(commands);
+    }
+
+    // a table for the stats command
+    public static void print(PrintStream out) {
+        out.println(String.format("%-26s %8s %7s %8s %9s %9s %9s %8s %8s %8s", "command", "count", "errors",
+                "rejected", "p50 ms", "p99 ms", "max ms", "trips", "conns", "rows"));
+        for (Map.Entry<String, CommandStats> entry : getCommands().entrySet()) {
+            CommandStats stats = entry.getValue();
+            LatencyHistogram latency = stats.latency;
+            long count = Math.max(1, stats.getCount());
+            out.println(String.format(Locale.ROOT, "%-26s %8d %7d %8d %9.2f %9.2f %9.2f %8.1f %8.1f %8.1f",
+                    entry.getKey(), stats.getCount(), stats.getErrors(), stats.getRejected(),
+                    latency.getPercentile(50) / 1000.0, latency.getPercentile(99) / 1000.0,
+                    latency.getMax() / 1000.0, (double) stats.getRoundTrips() / count,
+                    (double) stats.getConnections() / count, (double) stats.getRowsRead() / count));
+        }
+        List<Figure> registered = getFigures();
+        if (!registered.isEmpty()) {
+            out.println();
+        }
+        for (Figure figure : registered) {
+            out.println(String.format("%-44s %s", figure.name, format(figure.value.getAsDouble())));
+        }
+    }
+
+    // the Prometheus text exposition format
+    public static String export() {
+        StringWriter text = new StringWriter();
+        PrintWriter out = new PrintWriter(text);
+        Map<String, CommandStats> snapshot = getCommands();
+        counter(out, snapshot, "scheduler_commands_total", "Commands run.", CommandStats::getCount);
+        counter(out, snapshot, "scheduler_command_errors_total", "Commands that failed or hit a database error.",
+                CommandStats::getErrors);
+        counter(out, snapshot, "scheduler_command_rejected_total",
+                "Commands refused before running, e.g. for the wrong role.", CommandStats::getRejected);
+        counter(out, snapshot, "scheduler_command_round_trips_total", "Database round trips made by commands.",
+                CommandStats::getRoundTrips);
+        counter(out, snapshot, "scheduler_command_connections_total",
+                "Pooled connections taken by commands.", CommandStats::getConnections);
+        counter(out, snapshot, "scheduler_command_rows_read_total", "Result rows read by commands.",
+                CommandStats::getRowsRead);
+
+        out.print("# HELP scheduler_command_latency_seconds Time taken by commands.\n");
+        out.print("# TYPE scheduler_command_latency_seconds histogram\n");
+        for (Map.Entry<String, CommandStats> entry : snapshot.entrySet()) {
+            String label = "command=\"" + entry.getKey() + "\"";
+            LatencyHistogram latency = entry.getValue().latency;
+            // the histogram's own buckets are much finer, they are summed up to the exported bounds
+            long cumulative = 0;
+            int bucket = 0;
+            for (String bound : exportedBounds) {
+                long boundMicros = Math.round(Double.parseDouble(bound) * 1_000_000);
+                while (bucket < LatencyHistogram.getBuckets() && LatencyHistogram.upperBound(bucket) <= boundMicros) {
+                    cumulative += latency.getBucketCount(bucket++);
+                }
+                out.print("scheduler_command_latency_seconds_bucket{" + label + ",le=\"" + bound + "\"} " +
+                        cumulative + "\n");
+            }
+            out.print("scheduler_command_latency_seconds_bucket{" + label + ",le=\"+Inf\"} " +
+                    latency.getCount() + "\n");
+            out.print("scheduler_command_latency_seconds_sum{" + label + "} " + latency.getSum() / 1e6 + "\n");
+            out.print("scheduler_command_latency_seconds_count{" + label + "} " + latency.getCount() + "\n");
+        }
+        for (Figure figure : getFigures()) {
+            out.print("# HELP " + figure.name + " " + figure.help + "\n");
+            out.print("# TYPE " + figure.name + " " + figure.type + "\n");
+            out.print(figure.name + " " + format(figure.value.getAsDouble()) + "\n");
+        }
+        out.flush();
+        return text.toString();
+    }
+
+    private interface Value {
+        long of(CommandStats stats);
+    }
+
+    private static void counter(PrintWriter out, Map<String, CommandStats> snapshot, String name, String help,
+                                Value value) {
+        out.print("# HELP " + name + " " + help + "\n");
+        out.print("# TYPE " + name + " counter\n");
+        for (Map.Entry<String, CommandStats> entry : snapshot.entrySet()) {
+            out.print(name + "{command=\"" + entry.getKey() + "\"} " + value.of(entry.getValue()) + "\n");
+        }
+    }
+
+    // writes the metrics file, if there is one; the file is replaced in one step so readers
+    // never see half of it
+    public static void writeFile() {
+        if (metricsFile == null) {
+            return;
+        }
+        Path target = Paths.get(metricsFile);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            Files.write(temp, export().getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("Could not write metrics to " + metricsFile + ": " + e.getMessage());
+        }
+    }
+
+    // writes the file a last time, e.g. when the application quits
+    public static void shutdown() {
+        if (writer != null) {
+            writer.shutdown();
+        }
+        writeFile();
+    }
+
+    private static ScheduledExecutorService startWriter() {
+        if (metricsFile == null || intervalMillis <= 0) {
+            return null;
+        }
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-writer");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.scheduleAtFixedRate(Metrics::writeFile, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        return executor;
+    }
+}
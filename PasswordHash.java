@@ -0,0 +1,180 @@
+package scheduler.util;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// A self-describing password hash, stored in the Hash column as
+//
+//   version (1 byte) | algorithm (1 byte) | iterations (4 bytes) |
+//   salt length (1 byte) | salt | hash length (1 byte) | hash
+//
+// so the algorithm or iteration count can change without invalidating stored passwords.
+// Hashes that are out of date are replaced the next time their owner logs in.
+public class PasswordHash {
+
+    private static final byte VERSION = 1;
+    // anything shorter cannot be a record, in particular the 16-byte hashes stored before records existed
+    private static final int MIN_SALT_LENGTH = 8;
+    private static final int MIN_HASH_LENGTH = 16;
+
+    // the parameters used for new hashes, can be overridden through environment variables
+    private static final Algorithm currentAlgorithm =
+            Algorithm.fromName(Util.getStringEnv("HashAlgorithm", "PBKDF2WithHmacSHA1"));
+    private static final int currentIterations = Util.getIntEnv("HashIterations", 10);
+    private static final int SALT_LENGTH = 16;
+    private static final int HASH_LENGTH = 32;
+
+    private static final Map<Algorithm, PasswordHasher> hashers = new ConcurrentHashMap<>();
+
+    // time spent verifying passwords, to tell hashing cost apart from waiting
+    private static final LongAdder verifications = new LongAdder();
+    private static final LongAdder verifyNanos = new LongAdder();
+
+    public enum Algorithm {
+        PBKDF2_SHA1(1, "PBKDF2WithHmacSHA1"),
+        PBKDF2_SHA256(2, "PBKDF2WithHmacSHA256"),
+        PBKDF2_SHA512(3, "PBKDF2WithHmacSHA512");
+
+        private final int id;
+        private final String jcaName;
+
+        Algorithm(int id, String jcaName) {
+            this.id = id;
+            this.jcaName = jcaName;
+        }
+
+        static Algorithm fromId(int id) {
+            for (Algorithm algorithm : values()) {
+                if (algorithm.id == id) {
+                    return algorithm;
+                }
+            }
+            return null;
+        }
+
+        static Algorithm fromName(String jcaName) {
+            for (Algorithm algorithm : values()) {
+                if (algorithm.jcaName.equalsIgnoreCase(jcaName)) {
+                    return algorithm;
+                }
+            }
+            throw new IllegalArgumentException("Unsupported hash algorithm: " + jcaName);
+        }
+    }
+
+    private final Algorithm algorithm;
+    private final int iterations;
+    private final byte[] salt;
+    private final byte[] hash;
+
+    private PasswordHash(Algorithm algorithm, int iterations, byte[] salt, byte[] hash) {
+        this.algorithm = algorithm;
+        this.iterations = iterations;
+        this.salt = salt;
+        this.hash = hash;
+    }
+
+    // hashes the password with a fresh salt and the current parameters
+    public static PasswordHash create(String password) {
+        PasswordHasher hasher = hasher(currentAlgorithm);
+        byte[] salt = hasher.generateSalt();
+        byte[] hash = hasher.generateHash(password, salt, currentIterations, HASH_LENGTH * 8);
+        return new PasswordHash(currentAlgorithm, currentIterations, salt, hash);
+    }
+
+    // returns null if the bytes are not a PasswordHash record
+    public static PasswordHash decode(byte[] bytes) {
+        if (bytes == null || bytes.length < 8 + MIN_SALT_LENGTH + MIN_HASH_LENGTH || bytes[0] != VERSION) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.get();
+        Algorithm algorithm = Algorithm.fromId(buffer.get());
+        int iterations = buffer.getInt();
+        int saltLength = buffer.get() & 0xFF;
+        if (algorithm == null || iterations <= 0 || saltLength < MIN_SALT_LENGTH
+                || buffer.remaining() < saltLength + 1) {
+            return null;
+        }
+        byte[] salt = new byte[saltLength];
+        buffer.get(salt);
+        int hashLength = buffer.get() & 0xFF;
+        if (hashLength < MIN_HASH_LENGTH || buffer.remaining() != hashLength) {
+            return null;
+        }
+        byte[] hash = new byte[hashLength];
+        buffer.get(hash);
+        return new PasswordHash(algorithm, iterations, salt, hash);
+    }
+
+    public byte[] encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(8 + salt.length + hash.length);
+        buffer.put(VERSION);
+        buffer.put((byte) algorithm.id);
+        buffer.putInt(iterations);
+        buffer.put((byte) salt.length);
+        buffer.put(salt);
+        buffer.put((byte) hash.length);
+        buffer.put(hash);
+        return buffer.array();
+    }
+
+    public boolean matches(String password) {
+        long start = System.nanoTime();
+        byte[] calculated = hasher(algorithm).generateHash(password, salt, iterations, hash.length * 8);
+        recordVerification(start);
+        return MessageDigest.isEqual(calculated, hash);
+    }
+
+    // true if the hash was made with other parameters than new hashes would be
+    public boolean needsRehash() {
+        return algorithm != currentAlgorithm || iterations != currentIterations || hash.length != HASH_LENGTH;
+    }
+
+    // checks a password against a hash stored before records existed: a separate salt and a short hash
+    // zero-padded to the column width
+    public static boolean matchesLegacy(String password, byte[] salt, byte[] storedHash) {
+        if (salt == null || storedHash == null) {
+            return false;
+        }
+        long start = System.nanoTime();
+        byte[] calculated = Util.generateHash(password, salt);
+        recordVerification(start);
+        if (calculated.length > storedHash.length) {
+            return false;
+        }
+        return MessageDigest.isEqual(Arrays.copyOf(calculated, storedHash.length), storedHash);
+    }
+
+    // Getters
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public byte[] getSalt() {
+        return salt;
+    }
+
+    public static double getAverageHashMillis() {
+        long n = verifications.sum();
+        return n == 0 ? 0.0 : verifyNanos.sum() / 1_000_000.0 / n;
+    }
+
+    private static void recordVerification(long start) {
+        verifyNanos.add(System.nanoTime() - start);
+        verifications.increment();
+    }
+
+    private static PasswordHasher hasher(Algorithm algorithm) {
+        return hashers.computeIfAbsent(algorithm,
+                a -> new PasswordHasher(a.jcaName, currentIterations, HASH_LENGTH * 8, SALT_LENGTH));
+    }
+}
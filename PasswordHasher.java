@@ -0,0 +1,77 @@
+package scheduler.util;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.spec.InvalidKeySpecException;
+
+// Password hashing with the expensive objects set up once: the SecureRandom is seeded a
+// single time and shared (it is thread-safe), and every thread keeps its own
+// SecretKeyFactory since factories are not.
+public class PasswordHasher {
+
+    private static final SecureRandom random = new SecureRandom();
+
+    private final String algorithm;
+    private final int iterations;
+    private final int keyLengthBits;
+    private final int saltLength;
+    private final ThreadLocal<SecretKeyFactory> factories;
+
+    public PasswordHasher(String algorithm, int iterations, int keyLengthBits, int saltLength) {
+        if (iterations <= 0 || keyLengthBits <= 0 || saltLength <= 0) {
+            throw new IllegalArgumentException("Hash parameters must be positive!");
+        }
+        // fail now rather than on the first login if the algorithm is not available
+        newFactory(algorithm);
+        this.algorithm = algorithm;
+        this.iterations = iterations;
+        this.keyLengthBits = keyLengthBits;
+        this.saltLength = saltLength;
+        this.factories = ThreadLocal.withInitial(() -> newFactory(algorithm));
+    }
+
+    public byte[] generateSalt() {
+        byte[] salt = new byte[saltLength];
+        random.nextBytes(salt);
+        return salt;
+    }
+
+    public byte[] generateHash(String password, byte[] salt) {
+        return generateHash(password, salt, iterations, keyLengthBits);
+    }
+
+    // hashes with this hasher's algorithm but explicit parameters, e.g. to verify an older hash
+    public byte[] generateHash(String password, byte[] salt, int iterations, int keyLengthBits) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, keyLengthBits);
+        try {
+            return factories.get().generateSecret(spec).getEncoded();
+        } catch (InvalidKeySpecException ex) {
+            throw new IllegalStateException(ex);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    // Getters
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public int getKeyLengthBits() {
+        return keyLengthBits;
+    }
+
+    private static SecretKeyFactory newFactory(String algorithm) {
+        try {
+            return SecretKeyFactory.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package scheduler.util;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+// Decides whether a password is strong enough: long enough, using the required character
+// classes and not on the denylist of common or breached passwords. The character rules are
+// checked in a single pass over the password without regular expressions; the denylist is a
+// hash set of lower-cased entries, so a lookup costs one hash of the password.
+// The default policy comes from the environment: PasswordMinLength (8), PasswordRequireUpper,
+// PasswordRequireLower, PasswordRequireDigit (all true), PasswordSpecialChars ("!@#?", empty to
+// not require one) and PasswordDenylist, a file with one password per line.
+public class PasswordPolicy {
+
+    private static volatile PasswordPolicy defaultPolicy = null;
+
+    private final int minLength;
+    private final boolean requireUpper;
+    private final boolean requireLower;
+    private final boolean requireDigit;
+    // indexed by character, true for the special characters that count
+    private final boolean[] special;
+    private final boolean requireSpecial;
+    private final Set<String> denylist;
+
+    private PasswordPolicy(PasswordPolicyBuilder builder) {
+        this.minLength = builder.minLength;
+        this.requireUpper = builder.requireUpper;
+        this.requireLower = builder.requireLower;
+        this.requireDigit = builder.requireDigit;
+        this.special = new boolean[128];
+        for (char c : builder.specialChars.toCharArray()) {
+            if (c < 128) {
+                special[c] = true;
+            }
+        }
+        this.requireSpecial = !builder.specialChars.isEmpty();
+        this.denylist = builder.denylist;
+    }
+
+    public static PasswordPolicy getDefault() {
+        if (defaultPolicy == null) {
+            synchronized (PasswordPolicy.class) {
+                if (defaultPolicy == null) {
+                    defaultPolicy = fromEnvironment();
+                }
+            }
+        }
+        return defaultPolicy;
+    }
+
+    public static PasswordPolicy fromEnvironment() {
+        PasswordPolicyBuilder builder = new PasswordPolicyBuilder()
+                .minLength(Util.getIntEnv("PasswordMinLength", 8))
+                .requireUpper(Boolean.parseBoolean(Util.getStringEnv("PasswordRequireUpper", "true")))
+                .requireLower(Boolean.parseBoolean(Util.getStringEnv("PasswordRequireLower", "true")))
+                .requireDigit(Boolean.parseBoolean(Util.getStringEnv("PasswordRequireDigit", "true")));
+        // an empty value switches the rule off, so it is read directly
+        String specialChars = System.getenv("PasswordSpecialChars");
+        builder.specialChars(specialChars == null ? "!@#?" : specialChars);
+        String denylistFile = Util.getStringEnv("PasswordDenylist", null);
+        if (denylistFile != null) {
+            builder.denylist(loadDenylist(denylistFile));
+        }
+        return builder.build();
+    }
+
+    // reads one password per line, ignoring blank lines
+    public static Set<String> loadDenylist(String file) {
+        Set<String> denylist = new HashSet<>();
+        try {
+            for (String line : Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8)) {
+                String password = line.trim();
+                if (!password.isEmpty()) {
+                    denylist.add(password.toLowerCase(Locale.ROOT));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read password denylist " + file, e);
+        }
+        return denylist;
+    }
+
+    public boolean isStrong(String password) {
+        if (password.length() < minLength) {
+            return false;
+        }
+        boolean upper = !requireUpper;
+        boolean lower = !requireLower;
+        boolean digit = !requireDigit;
+        boolean specialFound = !requireSpecial;
+        for (int i = 0; i < password.length(); i++) {
+            char c = password.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                upper = true;
+            } else if (c >= 'a' && c <= 'z') {
+                lower = true;
+            } else if (c >= '0' && c <= '9') {
+                digit = true;
+            } else if (c < 128 && special[c]) {
+                specialFound = true;
+            }
+        }
+        if (!(upper && lower && digit && specialFound)) {
+            return false;
+        }
+        return denylist.isEmpty() || !denylist.contains(password.toLowerCase(Locale.ROOT));
+    }
+
+    public static class PasswordPolicyBuilder {
+        private int minLength = 8;
+        private boolean requireUpper = true;
+        private boolean requireLower = true;
+        private boolean requireDigit = true;
+        private String specialChars = "!@#?";
+        private Set<String> denylist = Collections.emptySet();
+
+        public PasswordPolicyBuilder minLength(int minLength) {
+            this.minLength = minLength;
+            return this;
+        }
+
+        public PasswordPolicyBuilder requireUpper(boolean requireUpper) {
+            this.requireUpper = requireUpper;
+            return this;
+        }
+
+        public PasswordPolicyBuilder requireLower(boolean requireLower) {
+            this.requireLower = requireLower;
+            return this;
+        }
+
+        public PasswordPolicyBuilder requireDigit(boolean requireDigit) {
+            this.requireDigit = requireDigit;
+            return this;
+        }
+
+        // at least one of these has to appear, an empty string drops the rule
+        public PasswordPolicyBuilder specialChars(String specialChars) {
+            this.specialChars = specialChars;
+            return this;
+        }
+
+        // lower-cased passwords that are always rejected
+        public PasswordPolicyBuilder denylist(Set<String> denylist) {
+            this.denylist = denylist;
+            return this;
+        }
+
+        public PasswordPolicy build() {
+            return new PasswordPolicy(this);
+        }
+    }
+}
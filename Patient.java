@@ -1,13 +1,15 @@
 package scheduler.model;
 
 import scheduler.db.ConnectionManager;
-import scheduler.util.Util;
+import scheduler.db.TransactionManager;
+import scheduler.util.PasswordHash;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Arrays;
+import java.sql.Statement;
+import java.util.List;
 
 public class Patient {
     private final String username;
@@ -39,24 +41,54 @@ public class Patient {
         return hash;
     }
 
-    public void saveToDB() throws SQLException {
+    // a single insert, so two signups with the same username cannot both succeed; returns false
+    // if the username is already taken
+    public boolean saveToDB() throws SQLException {
         ConnectionManager cm = new ConnectionManager();
         Connection con = cm.createConnection();
 
         String addPatient = "INSERT INTO Patients VALUES (?, ?, ?)";
-        try {
-            PreparedStatement statement = con.prepareStatement(addPatient);
+        try (PreparedStatement statement = con.prepareStatement(addPatient)) {
             statement.setString(1, this.username);
             statement.setBytes(2, this.salt);
             statement.setBytes(3, this.hash);
             statement.executeUpdate();
+            return true;
         } catch (SQLException e) {
+            if (TransactionManager.isDuplicateKey(e)) {
+                return false;
+            }
             throw new SQLException();
         } finally {
             cm.closeConnection();
         }
     }
 
+    // saves all the patients in a single transaction, sending them as one JDBC batch; a username
+    // that is already taken, also by an earlier entry of the list, is skipped instead of failing the
+    // others. Returns for every patient whether it was created.
+    public static boolean[] saveAllToDB(List<Patient> patients) throws SQLException {
+        String addPatient = "INSERT INTO Patients (Username, Salt, Hash) SELECT ?, ?, ? " +
+                "WHERE NOT EXISTS (SELECT 1 FROM Patients WHERE Username = ?)";
+        return TransactionManager.run(con -> {
+            try (PreparedStatement statement = con.prepareStatement(addPatient)) {
+                for (Patient patient : patients) {
+                    statement.setString(1, patient.username);
+                    statement.setBytes(2, patient.salt);
+                    statement.setBytes(3, patient.hash);
+                    statement.setString(4, patient.username);
+                    statement.addBatch();
+                }
+                int[] updateCounts = statement.executeBatch();
+                boolean[] created = new boolean[updateCounts.length];
+                for (int i = 0; i < updateCounts.length; i++) {
+                    created[i] = updateCounts[i] > 0 || updateCounts[i] == Statement.SUCCESS_NO_INFO;
+                }
+                return created;
+            }
+        });
+    }
+
     public static class PatientBuilder {
         private final String username;
         private final byte[] salt;
@@ -89,28 +121,52 @@ public class Patient {
             Connection con = cm.createConnection();
 
             String getPatient = "SELECT Salt, Hash FROM Patients WHERE Username = ?";
-            try {
-                PreparedStatement statement = con.prepareStatement(getPatient);
+            try (PreparedStatement statement = con.prepareStatement(getPatient)) {
                 statement.setString(1, this.username);
                 ResultSet resultSet = statement.executeQuery();
-                while (resultSet.next()) {
-                    byte[] salt = resultSet.getBytes("Salt");
-                    byte[] hash = Util.trim(resultSet.getBytes("Hash"));
-                    byte[] calculatedHash = Util.generateHash(password, salt);
-                    if (!Arrays.equals(hash, calculatedHash)) {
-                        return null;
-                    } else {
-                        this.salt = salt;
-                        this.hash = hash;
-                        return new Patient(this);
+                if (!resultSet.next()) {
+                    return null;
+                }
+                byte[] salt = resultSet.getBytes("Salt");
+                byte[] hash = resultSet.getBytes("Hash");
+                // hashes stored before PasswordHash records existed are verified the old way
+                PasswordHash stored = PasswordHash.decode(hash);
+                boolean matches = stored != null
+                        ? stored.matches(password)
+                        : PasswordHash.matchesLegacy(password, salt, hash);
+                if (!matches) {
+                    return null;
+                }
+                // upgrade outdated hashes now that we know the password
+                if (stored == null || stored.needsRehash()) {
+                    byte[] upgraded = PasswordHash.create(password).encode();
+                    if (replaceHash(con, hash, upgraded)) {
+                        salt = null;
+                        hash = upgraded;
                     }
                 }
-                return null;
+                this.salt = salt;
+                this.hash = hash;
+                return new Patient(this);
             } catch (SQLException e) {
                 throw new SQLException();
             } finally {
                 cm.closeConnection();
             }
         }
+
+        // only replaces the hash if it is still the one we verified against
+        private boolean replaceHash(Connection con, byte[] oldHash, byte[] newHash) {
+            String updateHash = "UPDATE Patients SET Salt = NULL, Hash = ? WHERE Username = ? AND Hash = ?";
+            try (PreparedStatement statement = con.prepareStatement(updateHash)) {
+                statement.setBytes(1, newHash);
+                statement.setString(2, this.username);
+                statement.setBytes(3, oldHash);
+                return statement.executeUpdate() == 1;
+            } catch (SQLException e) {
+                // the old hash still works, so the login does not fail over this
+                return false;
+            }
+        }
     }
 }
\ No newline at end of file
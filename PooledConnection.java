@@ -0,0 +1,141 @@
+package scheduler.db;
+
+import scheduler.util.Metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// A physical connection owned by the ConnectionPool. Users only ever see a proxy
+// handed out by lease(), whose close() returns the connection to the pool.
+class PooledConnection {
+    private final ConnectionPool pool;
+    private final Connection raw;
+    private final StatementCache statementCache;
+    private volatile long lastUsed;
+    private volatile boolean broken = false;
+
+    PooledConnection(ConnectionPool pool, Connection raw, int statementCacheSize) {
+        this.pool = pool;
+        this.raw = raw;
+        this.statementCache = new StatementCache(pool, raw, statementCacheSize);
+        this.lastUsed = System.currentTimeMillis();
+    }
+
+    Connection getRawConnection() {
+        return raw;
+    }
+
+    long getLastUsed() {
+        return lastUsed;
+    }
+
+    void touch() {
+        lastUsed = System.currentTimeMillis();
+    }
+
+    boolean isBroken() {
+        return broken;
+    }
+
+    Connection lease() {
+        return (Connection) Proxy.newProxyInstance(PooledConnection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new Lease());
+    }
+
+    // undo whatever the last user left behind, returns false if the connection is unusable
+    boolean reset() {
+        statementCache.reclaim();
+        try {
+            if (raw.isClosed()) {
+                return false;
+            }
+            if (!raw.getAutoCommit()) {
+                raw.rollback();
+                raw.setAutoCommit(true);
+            }
+            raw.clearWarnings();
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    void closeQuietly() {
+        statementCache.closeAll();
+        try {
+            raw.close();
+        } catch (SQLException e) {
+            // nothing left to do with a connection we are throwing away
+        }
+    }
+
+    private void checkBroken(SQLException e) {
+        // SQLState class 08 means the connection itself failed
+        String state = e.getSQLState();
+        if (state != null && state.startsWith("08")) {
+            broken = true;
+        }
+    }
+
+    // a single checkout of the connection; once closed it can no longer reach the physical connection
+    private class Lease implements InvocationHandler {
+        private boolean closed = false;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        pool.release(PooledConnection.this);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || raw.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + raw + "]";
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            try {
+                if (method.getName().equals("prepareStatement") && args.length == 1) {
+                    return TracingStatement.wrap(statementCache.prepare((String) args[0]), (String) args[0]);
+                }
+                if (method.getName().equals("commit") || method.getName().equals("rollback")) {
+                    Metrics.recordRoundTrip();
+                }
+                Object result = method.invoke(raw, args);
+                if (result instanceof Statement) {
+                    // prepareStatement and prepareCall get their SQL up front, createStatement with every execute
+                    String sql = method.getName().startsWith("prepare") ? (String) args[0] : null;
+                    return TracingStatement.wrap((Statement) result, sql);
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException) {
+                    checkBroken((SQLException) cause);
+                    Metrics.recordError();
+                }
+                throw cause;
+            } catch (SQLException e) {
+                checkBroken(e);
+                Metrics.recordError();
+                throw e;
+            }
+        }
+    }
+}
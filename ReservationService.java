@@ -0,0 +1,293 @@
+package scheduler.service;
+
+import scheduler.db.AppointmentIdAllocator;
+import scheduler.db.TransactionManager;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Books and cancels appointments. Claiming the caregiver's slot, taking a dose and inserting the
+// appointment happen in one transaction, so concurrent reservations can neither book the
+// same caregiver twice nor drive the dose count below zero. Free caregivers are picked from
+// the in-memory SlotIndex, falling back to a query only when it has nobody left for the date.
+public class ReservationService {
+
+    public enum Status {
+        RESERVED,
+        NO_SUCH_VACCINE,
+        NO_CAREGIVER,
+        NO_DOSES
+    }
+
+    public static class Reservation {
+        private final Status status;
+        private final int appointmentId;
+        private final String caregiverUsername;
+
+        private Reservation(Status status, int appointmentId, String caregiverUsername) {
+            this.status = status;
+            this.appointmentId = appointmentId;
+            this.caregiverUsername = caregiverUsername;
+        }
+
+        private static Reservation failed(Status status) {
+            return new Reservation(status, -1, null);
+        }
+
+        // Getters
+        public Status getStatus() {
+            return status;
+        }
+
+        public int getAppointmentId() {
+            return appointmentId;
+        }
+
+        public String getCaregiverUsername() {
+            return caregiverUsername;
+        }
+    }
+
+    private static final String selectCandidates =
+            "SELECT Username FROM Availabilities WHERE Time = ? ORDER BY Username";
+    private static final String claimSlot =
+            "DELETE FROM Availabilities WHERE Time = ? AND Username = ?";
+    private static final String takeDose =
+            "UPDATE Vaccines SET Doses = Doses - 1 WHERE Name = ? AND Doses > 0";
+    private static final String insertAppointment =
+            "INSERT INTO Appointments (AppointmentID, PatientUsername, CaregiverUsername, VaccineName, Time) " +
+            "VALUES (?, ?, ?, ?, ?)";
+
+    private static final String selectPatientAppointment =
+            "SELECT CaregiverUsername, VaccineName, Time FROM Appointments " +
+            "WHERE AppointmentID = ? AND PatientUsername = ?";
+    private static final String selectCaregiverAppointment =
+            "SELECT CaregiverUsername, VaccineName, Time FROM Appointments " +
+            "WHERE AppointmentID = ? AND CaregiverUsername = ?";
+    private static final String deletePatientAppointment =
+            "DELETE FROM Appointments WHERE AppointmentID = ? AND PatientUsername = ?";
+    private static final String deleteCaregiverAppointment =
+            "DELETE FROM Appointments WHERE AppointmentID = ? AND CaregiverUsername = ?";
+    private static final String restoreSlot =
+            "INSERT INTO Availabilities (Time, Username) SELECT ?, ? " +
+            "WHERE NOT EXISTS (SELECT 1 FROM Availabilities WHERE Time = ? AND Username = ?)";
+    private static final String restoreDose =
+            "UPDATE Vaccines SET Doses = Doses + 1 WHERE Name = ?";
+
+    // how many free caregivers to look at per query when claiming a slot
+    private static final int candidateBatchSize = 16;
+
+    // what a cancelled appointment gives back
+    private static class Cancellation {
+        private final String caregiverUsername;
+        private final String vaccineName;
+        private final Date date;
+
+        Cancellation(String caregiverUsername, String vaccineName, Date date) {
+            this.caregiverUsername = caregiverUsername;
+            this.vaccineName = vaccineName;
+            this.date = date;
+        }
+    }
+
+    // the slot index entry held by the current attempt, put back if the attempt does not commit
+    private static class SlotClaim {
+        private final Date date;
+        private int id = -1;
+
+        SlotClaim(Date date) {
+            this.date = date;
+        }
+
+        void release() {
+            SlotIndex.release(date, id);
+            id = -1;
+        }
+    }
+
+    private final AppointmentIdAllocator appointmentIds;
+
+    public ReservationService(AppointmentIdAllocator appointmentIds) {
+        this.appointmentIds = appointmentIds;
+    }
+
+    public Reservation reserve(String patientUsername, Date date, String vaccineName) throws SQLException {
+        // unknown vaccines are turned away without starting a transaction
+        if (!InventoryCache.exists(vaccineName)) {
+            return Reservation.failed(Status.NO_SUCH_VACCINE);
+        }
+        SlotClaim claim = new SlotClaim(date);
+        Reservation reservation;
+        try {
+            reservation = TransactionManager.run(con -> reserve(con, claim, patientUsername, date, vaccineName));
+            // doses added here may not have been written yet
+            if (reservation.status == Status.NO_DOSES && InventoryCache.flush(vaccineName)) {
+                reservation = TransactionManager.run(con -> reserve(con, claim, patientUsername, date, vaccineName));
+            }
+        } catch (SQLException | RuntimeException e) {
+            // e.g. the commit failed after the slot was claimed
+            claim.release();
+            throw e;
+        }
+        if (reservation.status == Status.RESERVED) {
+            InventoryCache.recordCommitted(vaccineName, -1);
+        }
+        return reservation;
+    }
+
+    // cancels the appointment if it belongs to the user, who is the patient or the caregiver
+    // depending on patient; the caregiver's slot and the dose become available again in the same
+    // transaction. Returns false if the user has no such appointment.
+    public boolean cancel(String username, boolean patient, int appointmentId) throws SQLException {
+        Cancellation cancellation = TransactionManager.run(con -> cancel(con, username, patient, appointmentId));
+        if (cancellation == null) {
+            return false;
+        }
+        SlotIndex.addFree(cancellation.date, cancellation.caregiverUsername);
+        InventoryCache.recordCommitted(cancellation.vaccineName, 1);
+        return true;
+    }
+
+    private Cancellation cancel(Connection con, String username, boolean patient, int appointmentId)
+            throws SQLException {
+        Cancellation cancellation;
+        try (PreparedStatement statement =
+                     con.prepareStatement(patient ? selectPatientAppointment : selectCaregiverAppointment)) {
+            statement.setInt(1, appointmentId);
+            statement.setString(2, username);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) {
+                    return null;
+                }
+                cancellation = new Cancellation(resultSet.getString(1), resultSet.getString(2),
+                        resultSet.getDate(3));
+            }
+        }
+
+        // a cancel of the same appointment that committed in the meantime leaves nothing to delete
+        try (PreparedStatement statement =
+                     con.prepareStatement(patient ? deletePatientAppointment : deleteCaregiverAppointment)) {
+            statement.setInt(1, appointmentId);
+            statement.setString(2, username);
+            if (statement.executeUpdate() == 0) {
+                con.rollback();
+                return null;
+            }
+        }
+
+        // until this commits, a reservation trying to claim the restored slot waits on its lock
+        try (PreparedStatement statement = con.prepareStatement(restoreSlot)) {
+            statement.setDate(1, cancellation.date);
+            statement.setString(2, cancellation.caregiverUsername);
+            statement.setDate(3, cancellation.date);
+            statement.setString(4, cancellation.caregiverUsername);
+            statement.executeUpdate();
+        }
+        try (PreparedStatement statement = con.prepareStatement(restoreDose)) {
+            statement.setString(1, cancellation.vaccineName);
+            statement.executeUpdate();
+        }
+        return cancellation;
+    }
+
+    private Reservation reserve(Connection con, SlotClaim claim, String patientUsername, Date date,
+                                String vaccineName) throws SQLException {
+        boolean booked = false;
+        try {
+            String caregiverUsername = claimCaregiver(con, claim);
+            if (caregiverUsername == null) {
+                con.rollback();
+                return Reservation.failed(Status.NO_CAREGIVER);
+            }
+
+            // the conditional update is what keeps Doses from going negative
+            try (PreparedStatement statement = con.prepareStatement(takeDose)) {
+                statement.setString(1, vaccineName);
+                if (statement.executeUpdate() == 0) {
+                    con.rollback();
+                    return Reservation.failed(Status.NO_DOSES);
+                }
+            }
+
+            int appointmentId = appointmentIds.nextId(con);
+            try (PreparedStatement statement = con.prepareStatement(insertAppointment)) {
+                statement.setInt(1, appointmentId);
+                statement.setString(2, patientUsername);
+                statement.setString(3, caregiverUsername);
+                statement.setString(4, vaccineName);
+                statement.setDate(5, date);
+                statement.executeUpdate();
+            }
+            booked = true;
+            return new Reservation(Status.RESERVED, appointmentId, caregiverUsername);
+        } finally {
+            if (!booked) {
+                claim.release();
+            }
+        }
+    }
+
+    // removes one free slot for the date and returns its caregiver, or null if every slot is taken;
+    // the slot index is tried first, so concurrent reservations go for different caregivers
+    private String claimCaregiver(Connection con, SlotClaim claim) throws SQLException {
+        // a slot left over from an attempt that failed to commit
+        claim.release();
+        int id;
+        while ((id = SlotIndex.claim(claim.date)) >= 0) {
+            String username = SlotIndex.getUsername(id);
+            if (deleteSlot(con, claim.date, username)) {
+                claim.id = id;
+                return username;
+            }
+            // the slot is already gone from the database, e.g. taken by another instance,
+            // so its bit stays cleared
+        }
+        // the index has nobody free, but another instance may have uploaded slots since it was loaded
+        return claimFromDatabase(con, claim.date);
+    }
+
+    private boolean deleteSlot(Connection con, Date date, String username) throws SQLException {
+        try (PreparedStatement statement = con.prepareStatement(claimSlot)) {
+            statement.setDate(1, date);
+            statement.setString(2, username);
+            return statement.executeUpdate() == 1;
+        }
+    }
+
+    // looks for free slots in the database and removes the first one that is still there
+    private String claimFromDatabase(Connection con, Date date) throws SQLException {
+        while (true) {
+            List<String> candidates = new ArrayList<>();
+            try (PreparedStatement statement = con.prepareStatement(selectCandidates)) {
+                // only the first few free caregivers are needed, not the whole day
+                statement.setMaxRows(candidateBatchSize);
+                statement.setDate(1, date);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        candidates.add(resultSet.getString("Username"));
+                    }
+                }
+            }
+            if (candidates.isEmpty()) {
+                return null;
+            }
+
+            // caregivers are tried in alphabetical order; a delete that removes nothing means
+            // another reservation claimed that slot first, so move on to the next caregiver
+            try (PreparedStatement statement = con.prepareStatement(claimSlot)) {
+                for (String username : candidates) {
+                    statement.setDate(1, date);
+                    statement.setString(2, username);
+                    if (statement.executeUpdate() == 1) {
+                        return username;
+                    }
+                }
+            }
+        }
+    }
+}
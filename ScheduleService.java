@@ -0,0 +1,136 @@
+package scheduler.service;
+
+import scheduler.db.ConnectionManager;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+
+// Read-only queries over caregiver availability. Results are handed to callbacks row by row
+// as they are read, so a busy day is never held in memory all at once.
+public class ScheduleService {
+
+    // rows fetched per round trip while streaming results
+    private static final int fetchSize = 500;
+
+    // answered from the primary key on Availabilities(Time, Username)
+    private static final String selectCaregivers =
+            "SELECT Username FROM Availabilities WHERE Time = ? ORDER BY Username";
+    // both are covered by an index on the user's column, see create.sql
+    private static final String selectPatientAppointments =
+            "SELECT AppointmentID, VaccineName, Time, CaregiverUsername FROM Appointments " +
+            "WHERE PatientUsername = ? AND AppointmentID > ? ORDER BY AppointmentID";
+    private static final String selectCaregiverAppointments =
+            "SELECT AppointmentID, VaccineName, Time, PatientUsername FROM Appointments " +
+            "WHERE CaregiverUsername = ? AND AppointmentID > ? ORDER BY AppointmentID";
+    // one range scan over the same primary key, leaving out caregivers already booked that day
+    private static final String countFreeCaregivers =
+            "SELECT A.Time, COUNT(*) FROM Availabilities A " +
+            "WHERE A.Time >= ? AND A.Time <= ? AND NOT EXISTS " +
+            "(SELECT 1 FROM Appointments P WHERE P.CaregiverUsername = A.Username AND P.Time = A.Time) " +
+            "GROUP BY A.Time ORDER BY A.Time";
+
+    public interface AppointmentConsumer {
+        // otherUsername is the caregiver for a patient's appointments and the patient for a caregiver's
+        void accept(int appointmentId, String vaccineName, Date date, String otherUsername);
+    }
+
+    // streams one page of the user's appointments: at most pageSize of them, in ID order, starting
+    // after afterId. Pages are found by ID rather than by offset, so a late page costs the same as
+    // the first. Returns whether there are more appointments after this page.
+    public static boolean appointmentsPage(boolean patient, String username, int afterId, int pageSize,
+                                           AppointmentConsumer appointments) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        if (con == null) {
+            throw new SQLException("No database connection available");
+        }
+
+        // leave room for the extra row below; a page of Integer.MAX_VALUE is every appointment anyway
+        pageSize = Math.min(pageSize, Integer.MAX_VALUE - 1);
+        String query = patient ? selectPatientAppointments : selectCaregiverAppointments;
+        try (PreparedStatement statement = con.prepareStatement(query)) {
+            // one extra row tells whether there is another page
+            statement.setMaxRows(pageSize + 1);
+            statement.setFetchSize(Math.min(pageSize + 1, fetchSize));
+            statement.setString(1, username);
+            statement.setInt(2, afterId);
+            int found = 0;
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    if (++found > pageSize) {
+                        return true;
+                    }
+                    appointments.accept(resultSet.getInt(1), resultSet.getString(2), resultSet.getDate(3),
+                            resultSet.getString(4));
+                }
+            }
+            return false;
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    // streams the caregivers free on the date, then, if there are any, every vaccine with its doses;
+    // returns the number of caregivers found
+    public static int searchDate(Date date, Consumer<String> caregivers, ObjIntConsumer<String> vaccines)
+            throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        if (con == null) {
+            throw new SQLException("No database connection available");
+        }
+
+        int found = 0;
+        try (PreparedStatement statement = con.prepareStatement(selectCaregivers)) {
+            statement.setFetchSize(fetchSize);
+            statement.setDate(1, date);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    caregivers.accept(resultSet.getString(1));
+                    found++;
+                }
+            }
+        } finally {
+            // released before the vaccines are read, which may need a connection of their own
+            cm.closeConnection();
+        }
+        if (found == 0) {
+            return 0;
+        }
+        // the vaccine stock comes from memory
+        InventoryCache.forEach(vaccines);
+        return found;
+    }
+
+    // streams every date in [start, end] that has a free caregiver along with how many are free;
+    // returns the number of dates found
+    public static int searchRange(Date start, Date end, ObjIntConsumer<Date> days) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        if (con == null) {
+            throw new SQLException("No database connection available");
+        }
+
+        try (PreparedStatement statement = con.prepareStatement(countFreeCaregivers)) {
+            statement.setFetchSize(fetchSize);
+            statement.setDate(1, start);
+            statement.setDate(2, end);
+            int found = 0;
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    days.accept(resultSet.getDate(1), resultSet.getInt(2));
+                    found++;
+                }
+            }
+            return found;
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+}
@@ -1,672 +1,756 @@
 package scheduler;
 
+import scheduler.db.AppointmentIdAllocator;
 import scheduler.db.ConnectionManager;
 import scheduler.model.Caregiver;
 import scheduler.model.Patient;
-import scheduler.model.Vaccine;
+import scheduler.service.AccountImporter;
+import scheduler.service.InventoryCache;
+import scheduler.service.LoginExecutor;
+import scheduler.service.ReservationService;
+import scheduler.service.ScheduleService;
+import scheduler.service.SlotIndex;
+import scheduler.util.LineBuffer;
+import scheduler.util.Metrics;
+import scheduler.util.PasswordHash;
+import scheduler.util.PasswordPolicy;
 import scheduler.util.Util;
 import java.util.*;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
+import java.io.UncheckedIOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
 import java.sql.SQLException;
 import java.sql.Date;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.RejectedExecutionException;
 
 public class Scheduler {
 
-    // objects to keep track of the currently logged-in user
-    // Note: it is always true that at most one of currentCaregiver and currentPatient is not null
-    //       since only one user can be logged-in at a time
-    private static Caregiver currentCaregiver = null;
-    private static Patient currentPatient = null;
+    // every scheduler instance sharing a database must use the same block size
+    private static final AppointmentIdAllocator appointmentIds =
+            new AppointmentIdAllocator(Util.getIntEnv("AppointmentIdBlockSize", 100));
+    private static final ReservationService reservationService = new ReservationService(appointmentIds);
+
+    // appointments shown by show_appointments when no page size is given
+    private static final int appointmentPageSize = Util.getIntEnv("AppointmentPageSize", 50);
+    // failed rows listed after an account import, the rest are only counted
+    private static final int importFailuresShown = Util.getIntEnv("ImportFailuresShown", 100);
+
+    // every command the scheduler understands, new commands only need to be registered here
+    private static final CommandRegistry commands = createCommands();
 
     public static void main(String[] args) {
+        // an unreadable password denylist ends the program before it starts, rather than failing
+        // the first account created
+        try {
+            PasswordPolicy.getDefault();
+        } catch (UncheckedIOException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+
+        // a broken data source configuration, e.g. a missing schema file, ends the program right away;
+        // the pool is set up before any command runs, so no command's metrics include the schema
+        try {
+            ConnectionManager.getPool();
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+
+        // --server <port> serves clients over TCP instead of the console
+        if (args.length == 2 && args[0].equals("--server")) {
+            try {
+                SchedulerServer.run(Integer.parseInt(args[1]));
+            } catch (NumberFormatException e) {
+                System.out.println("Please enter a valid port number!");
+            } catch (IOException e) {
+                System.out.println("Could not start the server.");
+                e.printStackTrace();
+            } finally {
+                InventoryCache.shutdown();
+                Metrics.shutdown();
+                ConnectionManager.shutdown();
+            }
+            return;
+        }
+
+        // --batch <file> [result_log] replays a command file, writing the results to the log or stdout
+        if ((args.length == 2 || args.length == 3) && args[0].equals("--batch")) {
+            PrintStream log = System.out;
+            try {
+                if (args.length == 3) {
+                    log = new PrintStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(args[2]))),
+                            false, StandardCharsets.UTF_8);
+                }
+                BatchRunner.run(Paths.get(args[1]), log);
+            } catch (IOException | InvalidPathException e) {
+                System.out.println("Could not run batch file " + args[1]);
+                e.printStackTrace();
+            } finally {
+                if (log != System.out) {
+                    log.close();
+                }
+                InventoryCache.shutdown();
+                Metrics.shutdown();
+                ConnectionManager.shutdown();
+            }
+            return;
+        }
+
+        // the console is a single session reading input from user
+        Session session = new Session(System.out);
+        printGreeting(System.out);
+        serve(session, new BufferedReader(new InputStreamReader(System.in)));
+        InventoryCache.shutdown();
+        // the last metrics still read the pool's figures
+        Metrics.shutdown();
+        ConnectionManager.shutdown();
+    }
+
+    public static void printGreeting(PrintStream out) {
         // printing greetings text
-        System.out.println();
-        System.out.println("Welcome to the COVID-19 Vaccine Reservation Scheduling Application!");
-        System.out.println("*** Please enter one of the following commands ***");
-        System.out.println("> create_patient <username> <password>");  //TODO: implement create_patient (Part 1)
-        System.out.println("> create_caregiver <username> <password>");
-        System.out.println("> login_patient <username> <password>");  // TODO: implement login_patient (Part 1)
-        System.out.println("> login_caregiver <username> <password>");
-        System.out.println("> search_caregiver_schedule <date>");  // TODO: implement search_caregiver_schedule (Part 2)
-        System.out.println("> reserve <date> <vaccine>");  // TODO: implement reserve (Part 2)
-        System.out.println("> upload_availability <date>");
-        System.out.println("> cancel <appointment_id>");  // TODO: implement cancel (extra credit)
-        System.out.println("> add_doses <vaccine> <number>");
-        System.out.println("> show_appointments");  // TODO: implement show_appointments (Part 2)
-        System.out.println("> logout");  // TODO: implement logout (Part 2)
-        System.out.println("> quit");
-        System.out.println();
-
-        // read input from user
-        BufferedReader r = new BufferedReader(new InputStreamReader(System.in));
+        out.println();
+        out.println("Welcome to the COVID-19 Vaccine Reservation Scheduling Application!");
+        out.println("*** Please enter one of the following commands ***");
+        out.println("> create_patient <username> <password>");  //TODO: implement create_patient (Part 1)
+        out.println("> create_caregiver <username> <password>");
+        out.println("> import_patients <csv_file>");
+        out.println("> import_caregivers <csv_file>");
+        out.println("> login_patient <username> <password>");  // TODO: implement login_patient (Part 1)
+        out.println("> login_caregiver <username> <password>");
+        out.println("> search_caregiver_schedule <date>");  // TODO: implement search_caregiver_schedule (Part 2)
+        out.println("> search_range <start_date> <end_date> [vaccine]");
+        out.println("> reserve <date> <vaccine>");  // TODO: implement reserve (Part 2)
+        out.println("> upload_availability <date>");
+        out.println("> upload_availability <start_date> <end_date> [weekdays]");
+        out.println("> import_availability <csv_file>");
+        out.println("> cancel <appointment_id>");  // TODO: implement cancel (extra credit)
+        out.println("> add_doses <vaccine> <number>");
+        out.println("> show_appointments [page_size] [after_id]");  // TODO: implement show_appointments (Part 2)
+        out.println("> stats");
+        out.println("> logout");  // TODO: implement logout (Part 2)
+        out.println("> quit");
+        out.println();
+    }
+
+    // reads and runs commands for the session until it quits or its input ends
+    public static void serve(Session session, BufferedReader r) {
+        PrintStream out = session.getOut();
         while (true) {
-            System.out.print("> ");
-            String response = "";
+            out.print("> ");
+            out.flush();
+            String response;
             try {
                 response = r.readLine();
             } catch (IOException e) {
-                System.out.println("Please try again!");
-            }
-            // split the user input by spaces
-            String[] tokens = response.split(" ");
-            // check if input exists
-            if (tokens.length == 0) {
-                System.out.println("Please try again!");
-                continue;
+                return;
             }
-            // determine which operation to perform
-            String operation = tokens[0];
-            if (operation.equals("create_patient")) {
-                createPatient(tokens);
-            } else if (operation.equals("create_caregiver")) {
-                createCaregiver(tokens);
-            } else if (operation.equals("login_patient")) {
-                loginPatient(tokens);
-            } else if (operation.equals("login_caregiver")) {
-                loginCaregiver(tokens);
-            } else if (operation.equals("search_caregiver_schedule")) {
-                searchCaregiverSchedule(tokens);
-            } else if (operation.equals("reserve")) {
-                reserve(tokens);
-            } else if (operation.equals("upload_availability")) {
-                uploadAvailability(tokens);
-            } else if (operation.equals("cancel")) {
-                cancel(tokens);
-            } else if (operation.equals("add_doses")) {
-                addDoses(tokens);
-            } else if (operation.equals("show_appointments")) {
-                showAppointments(tokens);
-            } else if (operation.equals("logout")) {
-                logout(tokens);
-            } else if (operation.equals("quit")) {
-                System.out.println("Bye!");
+            if (response == null || !execute(session, response)) {
+                out.flush();
                 return;
-            } else {
-                System.out.println("Invalid operation name!");
             }
         }
     }
 
-    private static void createPatient(String[] tokens) {
+    // runs a single command line for the session, returns false once the session quits
+    public static boolean execute(Session session, String response) {
+        commands.dispatch(session, session.getCommandLine().parse(response));
+        return !session.isEnded();
+    }
+
+    public static CommandRegistry getCommands() {
+        return commands;
+    }
+
+    private static CommandRegistry createCommands() {
+        CommandRegistry registry = new CommandRegistry();
+        registry.register(new Command.CommandBuilder("create_patient", Scheduler::createPatient)
+                .args(2).usageError("Failed to create user.").build());
+        registry.register(new Command.CommandBuilder("create_caregiver", Scheduler::createCaregiver)
+                .args(2).usageError("Failed to create user.").build());
+        registry.register(new Command.CommandBuilder("import_patients", Scheduler::importPatients)
+                .args(1).role(Command.Role.LOCAL).build());
+        registry.register(new Command.CommandBuilder("import_caregivers", Scheduler::importCaregivers)
+                .args(1).role(Command.Role.LOCAL).build());
+        registry.register(new Command.CommandBuilder("login_patient", Scheduler::loginPatient)
+                .args(2).role(Command.Role.LOGGED_OUT).usageError("Login failed.").build());
+        registry.register(new Command.CommandBuilder("login_caregiver", Scheduler::loginCaregiver)
+                .args(2).role(Command.Role.LOGGED_OUT).usageError("Login failed.").build());
+        registry.register(new Command.CommandBuilder("search_caregiver_schedule", Scheduler::searchCaregiverSchedule)
+                .args(1).role(Command.Role.LOGGED_IN).build());
+        registry.register(new Command.CommandBuilder("search_range", Scheduler::searchRange)
+                .args(2, 3).role(Command.Role.LOGGED_IN).build());
+        registry.register(new Command.CommandBuilder("reserve", Scheduler::reserve)
+                .args(2).role(Command.Role.PATIENT).build());
+        registry.register(new Command.CommandBuilder("upload_availability", Scheduler::uploadAvailability)
+                .args(1, 3).role(Command.Role.CAREGIVER).build());
+        registry.register(new Command.CommandBuilder("import_availability", Scheduler::importAvailability)
+                .args(1).role(Command.Role.CAREGIVER).build());
+        registry.register(new Command.CommandBuilder("cancel", Scheduler::cancel)
+                .args(1).role(Command.Role.LOGGED_IN).build());
+        registry.register(new Command.CommandBuilder("add_doses", Scheduler::addDoses)
+                .args(2).role(Command.Role.CAREGIVER).build());
+        registry.register(new Command.CommandBuilder("show_appointments", Scheduler::showAppointments)
+                .args(0, 2).role(Command.Role.LOGGED_IN).build());
+        registry.register(new Command.CommandBuilder("stats", Scheduler::stats).args(0).build());
+        registry.register(new Command.CommandBuilder("logout", Scheduler::logout).build());
+        registry.register(new Command.CommandBuilder("quit", Scheduler::quit).build());
+        return registry;
+    }
+
+    private static void createPatient(Session session, CommandLine args) {
+        PrintStream out = session.getOut();
         // TODO: Part 1
         // create_patient <username> <password>
-        // check 1: the length for tokens need to be exactly 3 to include all information (with the operation name)
-        if (tokens.length != 3) {
-            System.out.println("Failed to create user.");
-            return;
-        }
-        String username = tokens[1];
-        String password = tokens[2];
-
-        // check 2: check if the username has been taken already
-        if (usernameExistsPatient(username)) {
-            System.out.println("Username taken, try again!");
-            return;
-        }
+        String username = args.get(1);
+        String password = args.get(2);
 
-        // check 3: check if password is strong password
-        if (!isStrongPassword(password)) {
-            System.out.println("Password is weak! Please choose a stronger password.");
+        // check if password is strong password
+        if (!PasswordPolicy.getDefault().isStrong(password)) {
+            out.println("Password is weak! Please choose a stronger password.");
             return;
         }
 
-        byte[] salt = Util.generateSalt();
-        byte[] hash = Util.generateHash(password, salt);
+        // the salt is part of the hash record, so there is no separate salt to store
+        byte[] hash = PasswordHash.create(password).encode();
         // create the patient
         try {
-            Patient patient = new Patient.PatientBuilder(username, salt, hash).build();
+            Patient patient = new Patient.PatientBuilder(username, null, hash).build();
             // save to caregiver information to our database
-            patient.saveToDB();
-            System.out.println("Created user " + username);
+            if (!patient.saveToDB()) {
+                out.println("Username taken, try again!");
+                return;
+            }
+            out.println("Created user " + username);
         } catch (SQLException e) {
-            System.out.println("Failed to create user.");
+            out.println("Failed to create user.");
             e.printStackTrace();
         }
     }
 
-    private static void createCaregiver(String[] tokens) {
+    private static void createCaregiver(Session session, CommandLine args) {
+        PrintStream out = session.getOut();
         // create_caregiver <username> <password>
-        // check 1: the length for tokens need to be exactly 3 to include all information (with the operation name)
-        if (tokens.length != 3) {
-            System.out.println("Failed to create user.");
-            return;
-        }
-        String username = tokens[1];
-        String password = tokens[2];
-
-        // check 2: check if the username has been taken already
-        if (usernameExistsCaregiver(username)) {
-            System.out.println("Username taken, try again!");
-            return;
-        }
+        String username = args.get(1);
+        String password = args.get(2);
 
-        // check 3: check if password is strong password
-        if (!isStrongPassword(password)) {
-            System.out.println("Password is weak! Please choose a stronger password.");
+        // check if password is strong password
+        if (!PasswordPolicy.getDefault().isStrong(password)) {
+            out.println("Password is weak! Please choose a stronger password.");
             return;
         }
 
-        byte[] salt = Util.generateSalt();
-        byte[] hash = Util.generateHash(password, salt);
+        // the salt is part of the hash record, so there is no separate salt to store
+        byte[] hash = PasswordHash.create(password).encode();
         // create the caregiver
         try {
-            Caregiver caregiver = new Caregiver.CaregiverBuilder(username, salt, hash).build();
+            Caregiver caregiver = new Caregiver.CaregiverBuilder(username, null, hash).build();
             // save to caregiver information to our database
-            caregiver.saveToDB();
-            System.out.println("Created user " + username);
-        } catch (SQLException e) {
-            System.out.println("Failed to create user.");
-            e.printStackTrace();
-        }
-    }
-
-    private static boolean usernameExistsCaregiver(String username) {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String selectUsername = "SELECT * FROM Caregivers WHERE Username = ?";
-        try {
-            PreparedStatement statement = con.prepareStatement(selectUsername);
-            statement.setString(1, username);
-            ResultSet resultSet = statement.executeQuery();
-            // returns false if the cursor is not before the first record or if there are no rows in the ResultSet.
-            return resultSet.isBeforeFirst();
-        } catch (SQLException e) {
-            System.out.println("Error occurred when checking username");
-            e.printStackTrace();
-        } finally {
-            cm.closeConnection();
-        }
-        return true;
-    }
-
-    private static boolean usernameExistsPatient(String username) {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String selectUsername = "SELECT * FROM Patients WHERE Username = ?";
-        try {
-            PreparedStatement statement = con.prepareStatement(selectUsername);
-            statement.setString(1, username);
-            ResultSet resultSet = statement.executeQuery();
-            // returns false if the cursor is not before the first record or if there are no rows in the ResultSet.
-            return resultSet.isBeforeFirst();
+            if (!caregiver.saveToDB()) {
+                out.println("Username taken, try again!");
+                return;
+            }
+            out.println("Created user " + username);
         } catch (SQLException e) {
-            System.out.println("Error occurred when checking username");
+            out.println("Failed to create user.");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
         }
-        return true;
     }
 
-    private static void loginPatient(String[] tokens) {
+    private static void loginPatient(Session session, CommandLine args) {
+        PrintStream out = session.getOut();
         // TODO: Part 1
         // login_patient <username> <password>
-        // check 1: if someone's already logged-in, they need to log out first
-        if (currentCaregiver != null || currentPatient != null) {
-            System.out.println("User already logged in.");
-            return;
-        }
-        // check 2: the length for tokens need to be exactly 3 to include all information (with the operation name)
-        if (tokens.length != 3) {
-            System.out.println("Login failed.");
-            return;
-        }
-        String username = tokens[1];
-        String password = tokens[2];
+        String username = args.get(1);
+        String password = args.get(2);
 
         Patient patient = null;
         try {
-            patient = new Patient.PatientGetter(username, password).get();
+            // verification runs on the bounded login pool
+            patient = LoginExecutor.submit(() -> new Patient.PatientGetter(username, password).get());
+        } catch (RejectedExecutionException e) {
+            out.println("Too many logins right now, please try again shortly.");
+            return;
         } catch (SQLException e) {
-            System.out.println("Login failed.");
+            out.println("Login failed.");
             e.printStackTrace();
         }
         // check if the login was successful
         if (patient == null) {
-            System.out.println("Login failed.");
+            out.println("Login failed.");
         } else {
-            System.out.println("Logged in as: " + username);
-            currentPatient = patient;
+            out.println("Logged in as: " + username);
+            session.setCurrentPatient(patient);
         }
     }
 
-    private static void loginCaregiver(String[] tokens) {
+    private static void loginCaregiver(Session session, CommandLine args) {
+        PrintStream out = session.getOut();
         // login_caregiver <username> <password>
-        // check 1: if someone's already logged-in, they need to log out first
-        if (currentCaregiver != null || currentPatient != null) {
-            System.out.println("User already logged in.");
-            return;
-        }
-        // check 2: the length for tokens need to be exactly 3 to include all information (with the operation name)
-        if (tokens.length != 3) {
-            System.out.println("Login failed.");
-            return;
-        }
-        String username = tokens[1];
-        String password = tokens[2];
+        String username = args.get(1);
+        String password = args.get(2);
 
         Caregiver caregiver = null;
         try {
-            caregiver = new Caregiver.CaregiverGetter(username, password).get();
+            // verification runs on the bounded login pool
+            caregiver = LoginExecutor.submit(() -> new Caregiver.CaregiverGetter(username, password).get());
+        } catch (RejectedExecutionException e) {
+            out.println("Too many logins right now, please try again shortly.");
+            return;
         } catch (SQLException e) {
-            System.out.println("Login failed.");
+            out.println("Login failed.");
             e.printStackTrace();
         }
         // check if the login was successful
         if (caregiver == null) {
-            System.out.println("Login failed.");
+            out.println("Login failed.");
         } else {
-            System.out.println("Logged in as: " + username);
-            currentCaregiver = caregiver;
+            out.println("Logged in as: " + username);
+            session.setCurrentCaregiver(caregiver);
         }
     }
 
-    private static void searchCaregiverSchedule(String[] tokens) {
+    private static void searchCaregiverSchedule(Session session, CommandLine args) {
+        PrintStream out = session.getOut();
         // TODO: Part 2
         // search_caregiver_schedule <date>
-        // check if a user is logged in
-        if (currentCaregiver == null && currentPatient == null) {
-            System.out.println("Please login first!");
-            return;
-        }
-
-        // check if the length of tokens is correct
-        if (tokens.length != 2) {
-            System.out.println("Please try again!");
-            return;
-        }
 
         // check if the second token is a valid date
-        String dateStr = tokens[1];
+        String dateStr = args.get(1);
         Date date;
         try {
             date = Date.valueOf(dateStr);
         } catch (IllegalArgumentException e) {
-            System.out.println("Invalid date format! Please enter a date in the format yyyy-mm-dd.");
+            out.println("Invalid date format! Please enter a date in the format yyyy-mm-dd.");
             return;
         }
 
-        // perform the search query
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-        PreparedStatement stmt = null;
-        ResultSet rs = null;
-
+        // stream the results: caregivers free on the date, followed by the vaccine stock
+        LineBuffer buffer = new LineBuffer(out);
+        boolean[] headerPrinted = {false, false};
         try {
-            // Query to retrieve caregivers and vaccines available for the given date
-            String query = "SELECT C.Username, V.Name, V.Doses " +
-                    "FROM Caregivers C, Availabilities A, Vaccines V " +
-                    "WHERE C.Username = A.Username AND " +
-                    "A.Time = ? " +
-                    "ORDER BY C.Username";
-
-            stmt = con.prepareStatement(query);
-            stmt.setDate(1, date);
-            rs = stmt.executeQuery();
-
-            // Check if there are available caregivers for the given date
-            if (!rs.isBeforeFirst()) {
-                System.out.println("No available caregivers for the given date.");
-                return;
-            }
-
-            // Print the results
-            System.out.println("Available caregivers for " + dateStr + ":");
-            while (rs.next()) {
-                String caregiverUsername = rs.getString("Username");
-                String vaccineName = rs.getString("Name");
-                int availableDoses = rs.getInt("Doses");
-
-                System.out.println(caregiverUsername + " " + vaccineName + " " + availableDoses);
+            int found = ScheduleService.searchDate(date, caregiverUsername -> {
+                if (!headerPrinted[0]) {
+                    buffer.println("Available caregivers for " + dateStr + ":");
+                    headerPrinted[0] = true;
+                }
+                buffer.println(caregiverUsername);
+            }, (vaccineName, availableDoses) -> {
+                if (!headerPrinted[1]) {
+                    buffer.println("Available vaccines:");
+                    headerPrinted[1] = true;
+                }
+                buffer.println(vaccineName + " " + availableDoses);
+            });
+            if (found == 0) {
+                buffer.println("No available caregivers for the given date.");
             }
         } catch (SQLException e) {
-            System.out.println("Please try again!");
+            buffer.println("Please try again!");
             e.printStackTrace();
+        } finally {
+            buffer.flush();
         }
     }
 
-    private static void reserve(String[] tokens) {
-        // TODO: Part 2
-        // reserve <date> <vaccine>
-
-        // check if a user is logged in
-        if (currentCaregiver == null && currentPatient == null) {
-            System.out.println("Please login first!");
+    private static void searchRange(Session session, CommandLine args) {
+        PrintStream out = session.getOut();
+        // search_range <start_date> <end_date> [vaccine]
+        // check 1: both dates need to be valid and in order
+        Date start;
+        Date end;
+        try {
+            start = Date.valueOf(args.get(1));
+            end = Date.valueOf(args.get(2));
+        } catch (IllegalArgumentException e) {
+            out.println("Invalid date format! Please enter a date in the format yyyy-mm-dd.");
             return;
         }
-
-        // check if a patient is logged in
-        if (currentPatient == null) {
-            System.out.println("Please login as a patient first!");
+        if (end.before(start)) {
+            out.println("The end date cannot be before the start date!");
             return;
         }
 
-        // check if the length of tokens is correct
-        if (tokens.length != 3) {
-            System.out.println("Please try again!");
-            return;
+        LineBuffer buffer = new LineBuffer(out);
+        try {
+            // check 2: if a vaccine is given, it has to exist and have doses left
+            if (args.size() == 4) {
+                String vaccineName = args.get(3);
+                int doses = InventoryCache.getDoses(vaccineName);
+                if (doses < 0) {
+                    buffer.println("Invalid vaccine name! Please enter a valid vaccine.");
+                    return;
+                }
+                if (doses == 0) {
+                    buffer.println("Not enough available doses!");
+                    return;
+                }
+                buffer.println(vaccineName + ": " + doses + " doses available");
+            }
+
+            int found = ScheduleService.searchRange(start, end,
+                    (date, caregivers) -> buffer.println(date + ": " + caregivers + " available caregivers"));
+            if (found == 0) {
+                buffer.println("No available caregivers between " + start + " and " + end + ".");
+            }
+        } catch (SQLException e) {
+            buffer.println("Please try again!");
+            e.printStackTrace();
+        } finally {
+            buffer.flush();
         }
+    }
+
+    private static void reserve(Session session, CommandLine args) {
+        PrintStream out = session.getOut();
+        // TODO: Part 2
+        // reserve <date> <vaccine>
 
         // check if the second token is a valid date
-        String dateStr = tokens[1];
+        String dateStr = args.get(1);
         Date date;
         try {
             date = Date.valueOf(dateStr);
         } catch (IllegalArgumentException e) {
-            System.out.println("Invalid date format! Please enter a date in the format yyyy-mm-dd.");
-            return;
-        }
-
-        // check if the third token is a valid vaccine name
-        String vaccineName = tokens[2];
-        if (!vaccineExists(vaccineName)) {
-            System.out.println("Invalid vaccine name! Please enter a valid vaccine.");
+            out.println("Invalid date format! Please enter a date in the format yyyy-mm-dd.");
             return;
         }
 
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-        PreparedStatement stmt = null;
-        ResultSet rs = null;
-
+        String vaccineName = args.get(2);
         try {
-            // Query to check if a caregiver is available for the given date and vaccine
-            String query = "SELECT A.Username, V.Doses " +
-                    "FROM Availabilities A, Vaccines V " +
-                    "WHERE A.Username NOT IN " +
-                    "(SELECT CaregiverUsername FROM Appointments WHERE Time = ?) " +
-                    "AND A.Time = ? AND V.Name = ? " +
-                    "ORDER BY A.Username";
-
-            stmt = con.prepareStatement(query);
-            stmt.setDate(1, date);
-            stmt.setDate(2, date);
-            stmt.setString(3, vaccineName);
-            rs = stmt.executeQuery();
-
-            // Check if a caregiver is available
-            if (!rs.isBeforeFirst()) {
-                System.out.println("No available caregiver for the given date and vaccine.");
-                return;
-            }
-
-            // Check if there are enough vaccine doses available
-            int availableDoses = 0;
-            String caregiverUsername = "";
-            while (rs.next()) {
-                availableDoses = rs.getInt("Doses");
-                if (availableDoses > 0) {
-                    caregiverUsername = rs.getString("Username");
+            ReservationService.Reservation reservation =
+                    reservationService.reserve(session.getCurrentPatient().getUsername(), date, vaccineName);
+            switch (reservation.getStatus()) {
+                case NO_SUCH_VACCINE:
+                    out.println("Invalid vaccine name! Please enter a valid vaccine.");
+                    break;
+                case NO_CAREGIVER:
+                    out.println("No available caregiver for the given date and vaccine.");
+                    break;
+                case NO_DOSES:
+                    out.println("Not enough available doses!");
+                    break;
+                case RESERVED:
+                    out.println("Appointment ID: " + reservation.getAppointmentId() +
+                            ", Caregiver username: " + reservation.getCaregiverUsername());
                     break;
-                }
-            }
-
-            if (availableDoses <= 0) {
-                System.out.println("Not enough available doses!");
-                return;
             }
-
-            // Generate a new appointment ID
-            int appointmentID = generateAppointmentID();
-
-            // Create the appointment
-            String createAppointmentQuery = "INSERT INTO Appointments (AppointmentID, PatientUsername, CaregiverUsername, VaccineName, Time) VALUES (?, ?, ?, ?, ?)";
-            PreparedStatement createAppointmentStmt = con.prepareStatement(createAppointmentQuery);
-            createAppointmentStmt.setInt(1, appointmentID);
-            createAppointmentStmt.setString(2, currentPatient.getUsername());
-            createAppointmentStmt.setString(3, caregiverUsername);
-            createAppointmentStmt.setString(4, vaccineName);
-            createAppointmentStmt.setDate(5, date);
-            createAppointmentStmt.executeUpdate();
-
-            // Decrease the available doses for the vaccine
-            String updateVaccineQuery = "UPDATE Vaccines SET Doses = Doses - 1 WHERE Name = ?";
-            PreparedStatement updateVaccineStmt = con.prepareStatement(updateVaccineQuery);
-            updateVaccineStmt.setString(1, vaccineName);
-            updateVaccineStmt.executeUpdate();
-
-            // Remove the caregiver from availabilities for the specific date
-            String removeAvailabilityQuery = "DELETE FROM Availabilities WHERE Username = ? AND Time = ?";
-            PreparedStatement removeAvailabilityStmt = con.prepareStatement(removeAvailabilityQuery);
-            removeAvailabilityStmt.setString(1, caregiverUsername);
-            removeAvailabilityStmt.setDate(2, date);
-            removeAvailabilityStmt.executeUpdate();
-         } catch (SQLException e) {
-            System.out.println("Please try again!");
+        } catch (SQLException e) {
+            out.println("Please try again!");
             e.printStackTrace();
-        } finally {
-            // Close the result set, statement, and connection
+        }
+    }
+
+    private static void uploadAvailability(Session session, CommandLine args) {
+        PrintStream out = session.getOut();
+        // upload_availability <date>
+        // upload_availability <start_date> <end_date> [weekdays]
+        if (args.size() == 2) {
+            String date = args.get(1);
             try {
-                if (rs != null)
-                    rs.close();
-                if (stmt != null)
-                    stmt.close();
-                if (con != null)
-                    con.close();
+                Date d = Date.valueOf(date);
+                session.getCurrentCaregiver().uploadAvailability(d);
+                SlotIndex.addFree(d, session.getCurrentCaregiver().getUsername());
+                out.println("Availability uploaded!");
+            } catch (IllegalArgumentException e) {
+                out.println("Please enter a valid date!");
             } catch (SQLException e) {
+                out.println("Error occurred when uploading availability");
                 e.printStackTrace();
             }
+            return;
         }
-    }
-
-    private static boolean vaccineExists(String vaccineName) {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-        PreparedStatement stmt = null;
-        ResultSet rs = null;
 
+        // the range needs valid dates in order, and optionally a list of weekdays such as MON,WED,FRI
+        LocalDate start;
+        LocalDate end;
         try {
-            // Query to retrieve vaccine names
-            String query = "SELECT COUNT(*) FROM Vaccines WHERE name = ?";
-            stmt = con.prepareStatement(query);
-            stmt.setString(1, vaccineName);
-            rs = stmt.executeQuery();
-
-            // Check if vaccine with given name exists
-            if (rs.next()) {
-                int count = rs.getInt(1);
-                return count > 0;
+            start = LocalDate.parse(args.get(1));
+            end = LocalDate.parse(args.get(2));
+        } catch (DateTimeParseException e) {
+            out.println("Please enter a valid date!");
+            return;
+        }
+        if (end.isBefore(start)) {
+            out.println("The end date cannot be before the start date!");
+            return;
+        }
+        Set<DayOfWeek> weekdays = EnumSet.allOf(DayOfWeek.class);
+        if (args.size() == 4) {
+            weekdays = parseWeekdays(args.get(3));
+            if (weekdays == null) {
+                out.println("Please enter weekdays as a comma separated list, e.g. MON,WED,FRI");
+                return;
             }
-        } catch (SQLException e) {
-            System.out.println("Please try again!");
-            e.printStackTrace();
-        } finally {
-            // Close the result set, statement, and connection
-            try {
-                if (rs != null)
-                    rs.close();
-                if (stmt != null)
-                    stmt.close();
-                if (con != null)
-                    con.close();
-            } catch (SQLException e) {
-                e.printStackTrace();
+        }
+
+        List<Date> dates = new ArrayList<>();
+        for (LocalDate d = start; !d.isAfter(end); d = d.plusDays(1)) {
+            if (weekdays.contains(d.getDayOfWeek())) {
+                dates.add(Date.valueOf(d));
             }
         }
-        return false;
+        uploadAvailabilities(session, dates);
     }
 
-    private static int generateAppointmentID() {
-        ArrayList<Integer> list = new ArrayList<Integer>();
-        for (int i=1; i<11; i++) list.add(i);
-        Collections.shuffle(list);
-        return list.get(0);
+    private static void importPatients(Session session, CommandLine args) {
+        // import_patients <csv_file>
+        importAccounts(session, args.get(1), true);
     }
 
-    private static void uploadAvailability(String[] tokens) {
-        // upload_availability <date>
-        // check 1: check if the current logged-in user is a caregiver
-        if (currentCaregiver == null) {
-            System.out.println("Please login as a caregiver first!");
+    private static void importCaregivers(Session session, CommandLine args) {
+        // import_caregivers <csv_file>
+        importAccounts(session, args.get(1), false);
+    }
+
+    // every line is username,password; an optional header line is skipped
+    private static void importAccounts(Session session, String file, boolean patients) {
+        PrintStream out = session.getOut();
+        AccountImporter.Result result;
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(file))) {
+            result = AccountImporter.importAccounts(patients, reader);
+        } catch (IOException | InvalidPathException e) {
+            out.println("Could not read file " + file);
             return;
         }
-        // check 2: the length for tokens need to be exactly 2 to include all information (with the operation name)
-        if (tokens.length != 2) {
-            System.out.println("Please try again!");
-            return;
+        out.println("Imported " + result.getImported() + " of " + result.getRows() + " " +
+                (patients ? "patients" : "caregivers") + " in " + String.format("%.1f", result.getSeconds()) +
+                " s (" + String.format("%.0f", result.getImported() / Math.max(result.getSeconds(), 1e-9)) +
+                " accounts/sec)");
+        List<AccountImporter.Failure> failures = result.getFailures();
+        for (int i = 0; i < failures.size() && i < importFailuresShown; i++) {
+            out.println(failures.get(i));
         }
-        String date = tokens[1];
-        try {
-            Date d = Date.valueOf(date);
-            currentCaregiver.uploadAvailability(d);
-            System.out.println("Availability uploaded!");
-        } catch (IllegalArgumentException e) {
-            System.out.println("Please enter a valid date!");
-        } catch (SQLException e) {
-            System.out.println("Error occurred when uploading availability");
-            e.printStackTrace();
+        if (failures.size() > importFailuresShown) {
+            out.println("... and " + (failures.size() - importFailuresShown) + " more failures");
         }
     }
 
-    private static void cancel(String[] tokens) {
-        // TODO: Extra credit
-    }
-
-    private static void addDoses(String[] tokens) {
-        // add_doses <vaccine> <number>
-        // check 1: check if the current logged-in user is a caregiver
-        if (currentCaregiver == null) {
-            System.out.println("Please login as a caregiver first!");
+    private static void importAvailability(Session session, CommandLine args) {
+        PrintStream out = session.getOut();
+        // import_availability <csv_file>
+        // the first column of every line is a date, lines that do not start with one (e.g. a header) are skipped
+
+        List<Date> dates = new ArrayList<>();
+        int skipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(args.get(1)))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int comma = line.indexOf(',');
+                String field = (comma < 0 ? line : line.substring(0, comma)).trim();
+                if (field.isEmpty()) {
+                    continue;
+                }
+                try {
+                    dates.add(Date.valueOf(field));
+                } catch (IllegalArgumentException e) {
+                    skipped++;
+                }
+            }
+        } catch (IOException | InvalidPathException e) {
+            out.println("Could not read file " + args.get(1));
             return;
         }
-        // check 2: the length for tokens need to be exactly 3 to include all information (with the operation name)
-        if (tokens.length != 3) {
-            System.out.println("Please try again!");
+        if (skipped > 0) {
+            out.println("Skipped " + skipped + " lines without a valid date.");
+        }
+        uploadAvailabilities(session, dates);
+    }
+
+    private static void uploadAvailabilities(Session session, List<Date> dates) {
+        PrintStream out = session.getOut();
+        if (dates.isEmpty()) {
+            out.println("No dates to upload.");
             return;
         }
-        String vaccineName = tokens[1];
-        int doses = Integer.parseInt(tokens[2]);
-        Vaccine vaccine = null;
         try {
-            vaccine = new Vaccine.VaccineGetter(vaccineName).get();
+            long start = System.nanoTime();
+            int inserted = 0;
+            for (boolean isNew : session.getCurrentCaregiver().uploadAvailabilities(dates)) {
+                if (isNew) {
+                    inserted++;
+                }
+            }
+            for (Date d : dates) {
+                SlotIndex.addFree(d, session.getCurrentCaregiver().getUsername());
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            out.println("Availability uploaded! " + inserted + " new dates, " +
+                    (dates.size() - inserted) + " already uploaded (" +
+                    String.format("%.0f", dates.size() / Math.max(seconds, 1e-9)) + " rows/sec)");
         } catch (SQLException e) {
-            System.out.println("Error occurred when adding doses");
+            out.println("Error occurred when uploading availability");
             e.printStackTrace();
         }
-        // check 3: if getter returns null, it means that we need to create the vaccine and insert it into the Vaccines
-        //          table
-        if (vaccine == null) {
-            try {
-                vaccine = new Vaccine.VaccineBuilder(vaccineName, doses).build();
-                vaccine.saveToDB();
-            } catch (SQLException e) {
-                System.out.println("Error occurred when adding doses");
-                e.printStackTrace();
+    }
+
+    // parses a list like MON,WED,FRI; returns null if any entry is not a weekday
+    private static Set<DayOfWeek> parseWeekdays(String list) {
+        Set<DayOfWeek> weekdays = EnumSet.noneOf(DayOfWeek.class);
+        for (String name : list.split(",")) {
+            DayOfWeek match = null;
+            String prefix = name.trim().toUpperCase();
+            for (DayOfWeek day : DayOfWeek.values()) {
+                if (prefix.length() >= 3 && day.name().startsWith(prefix)) {
+                    match = day;
+                }
             }
-        } else {
-            // if the vaccine is not null, meaning that the vaccine already exists in our table
-            try {
-                vaccine.increaseAvailableDoses(doses);
-            } catch (SQLException e) {
-                System.out.println("Error occurred when adding doses");
-                e.printStackTrace();
+            if (match == null) {
+                return null;
             }
+            weekdays.add(match);
         }
-        System.out.println("Doses updated!");
+        return weekdays;
     }
 
-    private static void showAppointments(String[] tokens) {
-        // TODO: Part 2
-        // Check if a user is logged in
-        if (currentCaregiver == null && currentPatient == null) {
-            System.out.println("Please login first!");
+    private static void cancel(Session session, CommandLine args) {
+        PrintStream out = session.getOut();
+        // TODO: Extra credit
+        // cancel <appointment_id>
+        int appointmentId;
+        try {
+            appointmentId = Integer.parseInt(args.get(1));
+        } catch (NumberFormatException e) {
+            out.println("Please enter a valid appointment ID!");
             return;
         }
 
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-        PreparedStatement stmt = null;
-        ResultSet rs = null;
-
+        // patients and caregivers can only cancel their own appointments
+        boolean patient = session.getCurrentPatient() != null;
+        String username = patient ? session.getCurrentPatient().getUsername()
+                : session.getCurrentCaregiver().getUsername();
         try {
-            String query;
-            if (currentPatient != null) {
-                // Query for patient's appointments
-                query = "SELECT A.AppointmentID, A.VaccineName, A.Time, C.Username " +
-                        "FROM Appointments A, Caregivers C " +
-                        "WHERE A.CaregiverUsername = C.Username AND " +
-                        "A.PatientUsername = ? " +
-                        "ORDER BY A.AppointmentID";
-                stmt = con.prepareStatement(query);
-                stmt.setString(1, currentPatient.getUsername());
-            } else if (currentCaregiver != null) {
-                // Query for caregiver's appointments
-                query = "SELECT A.AppointmentID, A.VaccineName, A.Time, P.Username " +
-                        "FROM Appointments A, Patients P " +
-                        "WHERE A.PatientUsername = P.Username AND " +
-                        "A.CaregiverUsername = ? " +
-                        "ORDER BY A.AppointmentID";
-                stmt = con.prepareStatement(query);
-                stmt.setString(1, currentCaregiver.getUsername());
+            if (reservationService.cancel(username, patient, appointmentId)) {
+                out.println("Appointment " + appointmentId + " cancelled.");
+            } else {
+                out.println("No appointment with ID " + appointmentId + " found for the current user.");
             }
+        } catch (SQLException e) {
+            out.println("Please try again!");
+            e.printStackTrace();
+        }
+    }
 
-            if (stmt != null) {
-                rs = stmt.executeQuery();
-
-                // Check if any appointments are found
-                if (!rs.isBeforeFirst()) {
-                    System.out.println("No appointments found for the current user.");
-                    return;
-                }
-
-                // Print the appointments
-                System.out.println("Appointments:");
-
-                while (rs.next()) {
-                    int appointmentID = rs.getInt("AppointmentID");
-                    String vaccineName = rs.getString("VaccineName");
-                    Date date = rs.getDate("Time");
-                    String otherUserName = rs.getString(4);
+    private static void addDoses(Session session, CommandLine args) {
+        PrintStream out = session.getOut();
+        // add_doses <vaccine> <number>
+        String vaccineName = args.get(1);
+        int doses = Integer.parseInt(args.get(2));
+        if (doses <= 0) {
+            out.println("Please try again!");
+            return;
+        }
+        // existing vaccines get the doses written behind, new ones are created right away
+        try {
+            InventoryCache.addDoses(vaccineName, doses);
+        } catch (SQLException e) {
+            out.println("Error occurred when adding doses");
+            e.printStackTrace();
+            return;
+        }
+        out.println("Doses updated!");
+    }
 
-                    System.out.println("Appointment ID: " + appointmentID);
-                    System.out.println("Vaccine: " + vaccineName);
-                    System.out.println("Date: " + date);
+    private static void showAppointments(Session session, CommandLine args) {
+        PrintStream out = session.getOut();
+        // TODO: Part 2
+        // show_appointments [page_size] [after_id]
+        int pageSize = appointmentPageSize;
+        int afterId = -1;
+        try {
+            if (args.size() >= 2) {
+                pageSize = Integer.parseInt(args.get(1));
+            }
+            if (args.size() == 3) {
+                afterId = Integer.parseInt(args.get(2));
+            }
+        } catch (NumberFormatException e) {
+            out.println("Please try again!");
+            return;
+        }
+        if (pageSize <= 0) {
+            out.println("Please try again!");
+            return;
+        }
 
-                    if (currentPatient != null) {
-                        System.out.println("Caregiver: " + otherUserName);
-                    } else if (currentCaregiver != null) {
-                        System.out.println("Patient: " + otherUserName);
-                    }
-                }
+        boolean patient = session.getCurrentPatient() != null;
+        String username = patient ? session.getCurrentPatient().getUsername()
+                : session.getCurrentCaregiver().getUsername();
+        String otherRole = patient ? "Caregiver: " : "Patient: ";
+        LineBuffer buffer = new LineBuffer(out);
+        int[] shown = {0, afterId};
+        try {
+            boolean more = ScheduleService.appointmentsPage(patient, username, afterId, pageSize,
+                    (appointmentId, vaccineName, date, otherUsername) -> {
+                        if (shown[0]++ == 0) {
+                            buffer.println("Appointments:");
+                        }
+                        buffer.println("Appointment ID: " + appointmentId);
+                        buffer.println("Vaccine: " + vaccineName);
+                        buffer.println("Date: " + date);
+                        buffer.println(otherRole + otherUsername);
+                        shown[1] = appointmentId;
+                    });
+            if (shown[0] == 0) {
+                buffer.println(afterId < 0 ? "No appointments found for the current user." : "No more appointments.");
+            } else if (more) {
+                buffer.println("More appointments: show_appointments " + pageSize + " " + shown[1]);
             }
         } catch (SQLException e) {
-            System.out.println("Please try again!");
+            buffer.println("Please try again!");
             e.printStackTrace();
         } finally {
-            cm.closeConnection();
+            buffer.flush();
         }
     }
 
-    private static void logout(String[] tokens) {
+    private static void logout(Session session, CommandLine args) {
+        PrintStream out = session.getOut();
         // TODO: Part 2
         // check if a user is logged in
-        if (currentCaregiver == null && currentPatient == null) {
-            System.out.println("No user logged in.");
+        if (!session.isLoggedIn()) {
+            out.println("No user logged in.");
             return;
         }
 
         // log out the current user
         try {
-            if (currentCaregiver != null) {
-                currentCaregiver = null;
-            } else if (currentPatient != null) {
-                currentPatient = null;
+            if (session.getCurrentCaregiver() != null) {
+                session.setCurrentCaregiver(null);
+            } else if (session.getCurrentPatient() != null) {
+                session.setCurrentPatient(null);
             }
-            System.out.println("Successfully logged out!");
+            out.println("Successfully logged out!");
         } catch (Exception e) {
-            System.out.println("Please try again!");
+            out.println("Please try again!");
         }
     }
 
-    private static boolean isStrongPassword(String password) {
-        return password.length() >= 8 && password.matches(".*[A-Z].*") && password.matches(".*[a-z].*") && password.matches(".*[0-9].*") && password.matches(".*[!@#?].*");
+    private static void stats(Session session, CommandLine args) {
+        // stats
+        // per command since startup, latencies in milliseconds, round trips and connections per run
+        Metrics.print(session.getOut());
+    }
+
+    private static void quit(Session session, CommandLine args) {
+        // doses added by the session are written before it goes
+        try {
+            InventoryCache.flush();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        session.getOut().println("Bye!");
+        session.end();
     }
 }
@@ -0,0 +1,73 @@
+package scheduler;
+
+import scheduler.util.Util;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Serves the scheduler's line-based command protocol over TCP. Every connection is its own
+// Session, so each client logs in and out independently of the others, and the commands
+// run through the same handlers as on the console.
+public class SchedulerServer {
+
+    private static final int maxClients = Util.getIntEnv("ServerMaxClients", 1000);
+
+    public static void run(int port) throws IOException {
+        // one thread per connected client, idle threads are let go after a minute
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor clients = new ThreadPoolExecutor(0, maxClients, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), r -> {
+                    Thread t = new Thread(r, "client-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+
+        try (ServerSocket server = new ServerSocket(port)) {
+            System.out.println("Scheduler listening on port " + server.getLocalPort());
+            while (true) {
+                Socket socket = server.accept();
+                try {
+                    clients.execute(() -> handle(socket));
+                } catch (RejectedExecutionException e) {
+                    refuse(socket);
+                }
+            }
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    private static void handle(Socket socket) {
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(
+                     new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             PrintStream out = new PrintStream(
+                     new BufferedOutputStream(s.getOutputStream()), false, StandardCharsets.UTF_8.name())) {
+            s.setTcpNoDelay(true);
+            Session session = new Session(out, false);
+            Scheduler.printGreeting(out);
+            Scheduler.serve(session, in);
+        } catch (IOException e) {
+            // the client went away, its session simply ends
+        }
+    }
+
+    private static void refuse(Socket socket) {
+        try (Socket s = socket) {
+            s.getOutputStream().write("Server busy, please try again later.\n".getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // nothing more we can tell this client
+        }
+    }
+}
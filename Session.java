@@ -0,0 +1,73 @@
+package scheduler;
+
+import scheduler.model.Caregiver;
+import scheduler.model.Patient;
+
+import java.io.PrintStream;
+
+// The state of one client of the scheduler: who is logged in and where command output goes.
+// The console has a single session; in server mode every connection gets its own.
+public class Session {
+    private final PrintStream out;
+    // false for a network client, which must not reach the server's files
+    private final boolean local;
+    // reused for every line the session sends
+    private final CommandLine commandLine = new CommandLine();
+    private boolean ended = false;
+
+    // Note: it is always true that at most one of currentCaregiver and currentPatient is not null
+    //       since only one user can be logged-in per session at a time
+    private Caregiver currentCaregiver = null;
+    private Patient currentPatient = null;
+
+    public Session(PrintStream out) {
+        this(out, true);
+    }
+
+    public Session(PrintStream out, boolean local) {
+        this.out = out;
+        this.local = local;
+    }
+
+    // Getters
+    public PrintStream getOut() {
+        return out;
+    }
+
+    public Caregiver getCurrentCaregiver() {
+        return currentCaregiver;
+    }
+
+    public Patient getCurrentPatient() {
+        return currentPatient;
+    }
+
+    public CommandLine getCommandLine() {
+        return commandLine;
+    }
+
+    public boolean isEnded() {
+        return ended;
+    }
+
+    public boolean isLocal() {
+        return local;
+    }
+
+    public boolean isLoggedIn() {
+        return currentCaregiver != null || currentPatient != null;
+    }
+
+    public void setCurrentCaregiver(Caregiver caregiver) {
+        this.currentCaregiver = caregiver;
+    }
+
+    public void setCurrentPatient(Patient patient) {
+        this.currentPatient = patient;
+    }
+
+    // called by the quit command, the session stops reading commands afterwards
+    public void end() {
+        this.ended = true;
+    }
+}
@@ -0,0 +1,207 @@
+package scheduler.service;
+
+import scheduler.db.ConnectionManager;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// An in-memory copy of Availabilities: for every date, a bitset of the caregivers that are free
+// on it. Caregivers are numbered in the order they are first seen (alphabetically for those
+// loaded from the database), and a free slot is claimed by clearing its bit with a
+// compare-and-set, so concurrent reservations for the same date pick distinct caregivers
+// without a query or a lock. The index is loaded on first use and kept up to date by this
+// process; the database stays the authority, so a claim still has to delete the row.
+public class SlotIndex {
+
+    private static final String selectAvailabilities =
+            "SELECT Time, Username FROM Availabilities ORDER BY Username";
+
+    // caregivers per chunk of a day's bitset
+    private static final int CHUNK_BITS = 4096;
+    private static final int CHUNK_WORDS = CHUNK_BITS / 64;
+
+    // the free caregivers of one date, in chunks created when the first caregiver in them is free
+    private static class Day {
+        private volatile AtomicLongArray[] chunks = new AtomicLongArray[0];
+
+        AtomicLongArray chunk(int index) {
+            AtomicLongArray[] current = chunks;
+            if (index < current.length && current[index] != null) {
+                return current[index];
+            }
+            synchronized (this) {
+                current = chunks;
+                if (index >= current.length) {
+                    current = Arrays.copyOf(current, index + 1);
+                }
+                if (current[index] == null) {
+                    current[index] = new AtomicLongArray(CHUNK_WORDS);
+                }
+                chunks = current;
+                return current[index];
+            }
+        }
+
+        void set(int id) {
+            AtomicLongArray words = chunk(id / CHUNK_BITS);
+            int word = (id % CHUNK_BITS) / 64;
+            long bit = 1L << (id % 64);
+            long value;
+            do {
+                value = words.get(word);
+            } while ((value & bit) == 0 && !words.compareAndSet(word, value, value | bit));
+        }
+
+        void clear(int id) {
+            AtomicLongArray[] current = chunks;
+            int index = id / CHUNK_BITS;
+            if (index >= current.length || current[index] == null) {
+                return;
+            }
+            AtomicLongArray words = current[index];
+            int word = (id % CHUNK_BITS) / 64;
+            long bit = 1L << (id % 64);
+            long value;
+            do {
+                value = words.get(word);
+            } while ((value & bit) != 0 && !words.compareAndSet(word, value, value & ~bit));
+        }
+
+        // clears the lowest set bit and returns its caregiver, or -1 if nobody is free
+        int claim() {
+            AtomicLongArray[] current = chunks;
+            for (int c = 0; c < current.length; c++) {
+                AtomicLongArray words = current[c];
+                if (words == null) {
+                    continue;
+                }
+                for (int w = 0; w < CHUNK_WORDS; w++) {
+                    long value = words.get(w);
+                    while (value != 0) {
+                        long bit = Long.lowestOneBit(value);
+                        if (words.compareAndSet(w, value, value & ~bit)) {
+                            return c * CHUNK_BITS + w * 64 + Long.numberOfTrailingZeros(bit);
+                        }
+                        // another reservation changed the word, look at it again
+                        value = words.get(w);
+                    }
+                }
+            }
+            return -1;
+        }
+    }
+
+    // caregiver numbers both ways
+    private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private static volatile String[] usernames = new String[64];
+    private static final Object internLock = new Object();
+
+    // keyed by the date's epoch day
+    private static final ConcurrentHashMap<Long, Day> days = new ConcurrentHashMap<>();
+    private static volatile boolean loaded = false;
+
+    // takes a free caregiver for the date out of the index; returns its number, or -1 if the
+    // index has nobody free on that date
+    public static int claim(Date date) throws SQLException {
+        ensureLoaded();
+        Day day = days.get(date.toLocalDate().toEpochDay());
+        return day == null ? -1 : day.claim();
+    }
+
+    // puts back a slot whose claim was rolled back
+    public static void release(Date date, int id) {
+        if (id >= 0) {
+            day(date).set(id);
+        }
+    }
+
+    // records a slot that was committed to Availabilities
+    public static void addFree(Date date, String username) {
+        if (loaded) {
+            day(date).set(intern(username));
+        }
+    }
+
+    // records a slot that was removed from Availabilities outside a claim
+    public static void remove(Date date, String username) {
+        Integer id = ids.get(username);
+        Day day = days.get(date.toLocalDate().toEpochDay());
+        if (id != null && day != null) {
+            day.clear(id);
+        }
+    }
+
+    // forgets the free slots, they are read from the database again on the next claim; caregivers
+    // keep their numbers
+    static void invalidate() {
+        synchronized (SlotIndex.class) {
+            loaded = false;
+            days.clear();
+        }
+    }
+
+    public static String getUsername(int id) {
+        return usernames[id];
+    }
+
+    private static Day day(Date date) {
+        return days.computeIfAbsent(date.toLocalDate().toEpochDay(), d -> new Day());
+    }
+
+    private static int intern(String username) {
+        Integer id = ids.get(username);
+        if (id != null) {
+            return id;
+        }
+        synchronized (internLock) {
+            id = ids.get(username);
+            if (id != null) {
+                return id;
+            }
+            int next = ids.size();
+            String[] current = usernames;
+            if (next == current.length) {
+                current = Arrays.copyOf(current, next * 2);
+            }
+            current[next] = username;
+            // publish the name before the number, so getUsername works for every number handed out
+            usernames = current;
+            ids.put(username, next);
+            return next;
+        }
+    }
+
+    private static void ensureLoaded() throws SQLException {
+        if (loaded) {
+            return;
+        }
+        synchronized (SlotIndex.class) {
+            if (loaded) {
+                return;
+            }
+            ConnectionManager cm = new ConnectionManager();
+            Connection con = cm.createConnection();
+            if (con == null) {
+                throw new SQLException("No database connection available");
+            }
+
+            try (PreparedStatement statement = con.prepareStatement(selectAvailabilities)) {
+                statement.setFetchSize(500);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        day(resultSet.getDate(1)).set(intern(resultSet.getString(2)));
+                    }
+                }
+            } finally {
+                cm.closeConnection();
+            }
+            loaded = true;
+        }
+    }
+}
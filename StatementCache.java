@@ -0,0 +1,240 @@
+package scheduler.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Keeps the prepared statements of one physical connection keyed by their SQL text, so a
+// statement that is prepared again skips preparation on the server. Statements handed out
+// by the cache return to it when closed; the least recently used ones are closed for real
+// once the cache is full. Settings a user changes on a statement, such as maxRows, are put back
+// to the driver's defaults when it returns, so they never reach the next user of the same SQL.
+class StatementCache {
+    private final Connection raw;
+    private final int maxSize;
+    private final ConnectionPool pool;
+    private final LinkedHashMap<String, Entry> statements;
+
+    StatementCache(ConnectionPool pool, Connection raw, int maxSize) {
+        this.pool = pool;
+        this.raw = raw;
+        this.maxSize = maxSize;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    synchronized PreparedStatement prepare(String sql) throws SQLException {
+        if (maxSize <= 0) {
+            return raw.prepareStatement(sql);
+        }
+        Entry entry = statements.get(sql);
+        if (entry != null && !entry.inUse) {
+            pool.recordStatementCacheHit();
+            return entry.checkout();
+        }
+        pool.recordStatementCacheMiss();
+        if (entry != null) {
+            // the same SQL is already open on this connection, hand out a plain statement
+            return raw.prepareStatement(sql);
+        }
+        entry = new Entry(sql, raw.prepareStatement(sql));
+        entry.recordDefaults();
+        statements.put(sql, entry);
+        evictOverflow();
+        return entry.checkout();
+    }
+
+    // called when the connection goes back to the pool, statements left open by the last user are reclaimed
+    synchronized void reclaim() {
+        Iterator<Entry> it = statements.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.inUse) {
+                entry.checkin();
+                if (entry.evicted) {
+                    it.remove();
+                    entry.closeQuietly();
+                }
+            }
+        }
+    }
+
+    synchronized void closeAll() {
+        for (Entry entry : statements.values()) {
+            entry.closeQuietly();
+        }
+        statements.clear();
+    }
+
+    synchronized int size() {
+        return statements.size();
+    }
+
+    private void evictOverflow() {
+        Iterator<Map.Entry<String, Entry>> it = statements.entrySet().iterator();
+        while (statements.size() > maxSize && it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            it.remove();
+            if (eldest.inUse) {
+                // closed for real once its current user is done with it
+                eldest.evicted = true;
+            } else {
+                eldest.closeQuietly();
+            }
+        }
+    }
+
+    private synchronized void release(Entry entry, int checkout) {
+        if (entry.checkouts != checkout || !entry.inUse) {
+            return;
+        }
+        entry.checkin();
+        if (entry.evicted) {
+            statements.remove(entry.sql, entry);
+            entry.closeQuietly();
+        }
+    }
+
+    private class Entry {
+        private final String sql;
+        private final PreparedStatement statement;
+        private ResultSet openResult = null;
+        private boolean inUse = false;
+        private boolean evicted = false;
+        // the driver's settings when the statement was prepared, and whether a user changed any
+        private int defaultMaxRows;
+        private int defaultFetchSize;
+        private int defaultQueryTimeout;
+        private int defaultMaxFieldSize;
+        private int defaultFetchDirection;
+        private boolean settingsChanged = false;
+        // bumped on every checkout so stale handles cannot touch the statement again
+        private int checkouts = 0;
+
+        Entry(String sql, PreparedStatement statement) {
+            this.sql = sql;
+            this.statement = statement;
+        }
+
+        void recordDefaults() throws SQLException {
+            defaultMaxRows = statement.getMaxRows();
+            defaultFetchSize = statement.getFetchSize();
+            defaultQueryTimeout = statement.getQueryTimeout();
+            defaultMaxFieldSize = statement.getMaxFieldSize();
+            defaultFetchDirection = statement.getFetchDirection();
+        }
+
+        PreparedStatement checkout() {
+            inUse = true;
+            checkouts++;
+            return (PreparedStatement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, new Handle(this, checkouts));
+        }
+
+        void checkin() {
+            inUse = false;
+            checkouts++;
+            try {
+                if (openResult != null) {
+                    openResult.close();
+                }
+                statement.clearParameters();
+                if (settingsChanged) {
+                    statement.setMaxRows(defaultMaxRows);
+                    statement.setFetchSize(defaultFetchSize);
+                    statement.setQueryTimeout(defaultQueryTimeout);
+                    statement.setMaxFieldSize(defaultMaxFieldSize);
+                    statement.setFetchDirection(defaultFetchDirection);
+                    settingsChanged = false;
+                }
+            } catch (SQLException e) {
+                evicted = true;
+            } finally {
+                openResult = null;
+            }
+        }
+
+        void closeQuietly() {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                // the statement is being thrown away anyway
+            }
+        }
+    }
+
+    // the statement settings checkin puts back
+    private static boolean changesSettings(String method) {
+        switch (method) {
+            case "setMaxRows":
+            case "setLargeMaxRows":
+            case "setFetchSize":
+            case "setQueryTimeout":
+            case "setMaxFieldSize":
+            case "setFetchDirection":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private class Handle implements InvocationHandler {
+        private final Entry entry;
+        private final int checkout;
+
+        Handle(Entry entry, int checkout) {
+            this.entry = entry;
+            this.checkout = checkout;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            boolean current;
+            synchronized (StatementCache.this) {
+                current = entry.checkouts == checkout;
+            }
+            switch (method.getName()) {
+                case "close":
+                    release(entry, checkout);
+                    return null;
+                case "isClosed":
+                    return !current || entry.statement.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CachedStatement[" + entry.statement + "]";
+                default:
+                    break;
+            }
+            if (!current) {
+                throw new SQLException("Statement has already been closed");
+            }
+            if (changesSettings(method.getName())) {
+                synchronized (StatementCache.this) {
+                    entry.settingsChanged = true;
+                }
+            }
+            try {
+                Object result = method.invoke(entry.statement, args);
+                if (result instanceof ResultSet) {
+                    synchronized (StatementCache.this) {
+                        // executing again closes the previous result, so only the latest one is tracked
+                        entry.openResult = (ResultSet) result;
+                    }
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package scheduler.db;
+
+import scheduler.util.Metrics;
+import scheduler.util.Util;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Wraps every statement a leased connection hands out to time its executions. A statement
+// taking longer than SlowQueryMillis goes to the slow-query log (SlowQueryLog, stderr by
+// default) as a tab-separated line: time, milliseconds, rows, command, SQL and the types of the
+// bound parameters, never their values. For a query the time runs until its last row is read
+// or its result is closed, since the rows are only fetched while they are read; the rows read
+// are also counted for the command's metrics.
+class TracingStatement implements InvocationHandler {
+
+    // a negative value switches the log off, 0 logs every statement
+    private static final long slowQueryNanos = TimeUnit.MILLISECONDS.toNanos(Util.getIntEnv("SlowQueryMillis", 500));
+    private static final PrintStream slowQueryLog = openSlowQueryLog();
+
+    private final Statement statement;
+    // the prepared SQL, null for a plain statement that gets its SQL with every execute
+    private final String sql;
+    // types of the bound parameters, the first parameter at index 0
+    private final List<String> shapes = new ArrayList<>();
+    private int batches = 0;
+    // the query whose rows are being read
+    private Execution reading = null;
+
+    private TracingStatement(Statement statement, String sql) {
+        this.statement = statement;
+        this.sql = sql;
+    }
+
+    static Statement wrap(Statement statement, String sql) {
+        Class<?> type = statement instanceof CallableStatement ? CallableStatement.class
+                : statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+        return (Statement) Proxy.newProxyInstance(TracingStatement.class.getClassLoader(),
+                new Class<?>[]{type}, new TracingStatement(statement, sql));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        if (name.startsWith("execute")) {
+            return execute(method, args);
+        }
+        // parameter setters take the position first, the statement's own setters one argument
+        if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+            bind((Integer) args[0], name, args[1]);
+        } else if (name.equals("clearParameters")) {
+            shapes.clear();
+        } else if (name.equals("addBatch")) {
+            batches++;
+        } else if (name.equals("clearBatch")) {
+            batches = 0;
+        } else if (name.equals("close")) {
+            finishReading();
+        }
+        switch (name) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                break;
+        }
+        try {
+            return method.invoke(statement, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private Object execute(Method method, Object[] args) throws Throwable {
+        // executing again closes the previous result
+        finishReading();
+        String text = sql != null ? sql : args != null && args.length > 0 ? String.valueOf(args[0]) : "";
+        String parameters = describeParameters();
+        Metrics.recordRoundTrip();
+        long start = System.nanoTime();
+        Object result;
+        try {
+            result = method.invoke(statement, args);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            // a taken username is an answer, not a failure
+            if (cause instanceof SQLException && !TransactionManager.isDuplicateKey((SQLException) cause)) {
+                Metrics.recordError();
+            }
+            throw cause;
+        } finally {
+            if (method.getName().equals("executeBatch")) {
+                batches = 0;
+            }
+        }
+        if (result instanceof ResultSet) {
+            reading = new Execution(text, parameters, start);
+            return wrap((ResultSet) result, reading);
+        }
+        report(text, parameters, System.nanoTime() - start, rowsOf(result));
+        return result;
+    }
+
+    private void bind(int position, String setter, Object value) {
+        String shape;
+        if (value == null || setter.equals("setNull")) {
+            shape = "null";
+        } else if (setter.equals("setObject")) {
+            shape = value.getClass().getSimpleName();
+        } else {
+            shape = setter.substring(3);
+        }
+        while (shapes.size() < position) {
+            shapes.add("?");
+        }
+        shapes.set(position - 1, shape);
+    }
+
+    private String describeParameters() {
+        if (shapes.isEmpty()) {
+            return batches > 0 ? "x " + batches : "";
+        }
+        String parameters = "(" + String.join(", ", shapes) + ")";
+        return batches > 0 ? parameters + " x " + batches : parameters;
+    }
+
+    private void finishReading() {
+        if (reading != null) {
+            reading.finish();
+            reading = null;
+        }
+    }
+
+    private static ResultSet wrap(ResultSet resultSet, Execution execution) {
+        return (ResultSet) Proxy.newProxyInstance(TracingStatement.class.getClassLoader(),
+                new Class<?>[]{ResultSet.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "close":
+                            execution.finish();
+                            break;
+                        default:
+                            break;
+                    }
+                    Object result;
+                    try {
+                        result = method.invoke(resultSet, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    if (method.getName().equals("next")) {
+                        if ((Boolean) result) {
+                            execution.rows++;
+                        } else {
+                            execution.finish();
+                        }
+                    }
+                    return result;
+                });
+    }
+
+    // an update count, the counts of a batch, or -1 when there is a result to read instead
+    private static long rowsOf(Object result) {
+        if (result instanceof Integer || result instanceof Long) {
+            return ((Number) result).longValue();
+        }
+        long rows = 0;
+        if (result instanceof int[]) {
+            for (int count : (int[]) result) {
+                rows += Math.max(count, 0);
+            }
+            return rows;
+        }
+        if (result instanceof long[]) {
+            for (long count : (long[]) result) {
+                rows += Math.max(count, 0);
+            }
+            return rows;
+        }
+        return -1;
+    }
+
+    private static void report(String sql, String parameters, long nanos, long rows) {
+        if (slowQueryNanos < 0 || nanos < slowQueryNanos) {
+            return;
+        }
+        String command = Metrics.getCurrentCommand();
+        // one line per statement, println keeps concurrent lines apart
+        slowQueryLog.println(Instant.now() + "\t" + String.format("%.1f", nanos / 1e6) + "\t" +
+                (rows < 0 ? "-" : String.valueOf(rows)) + "\t" + (command == null ? "-" : command) + "\t" +
+                sql.replaceAll("\\s+", " ").trim() + "\t" + parameters);
+    }
+
+    private static PrintStream openSlowQueryLog() {
+        String file = Util.getStringEnv("SlowQueryLog", null);
+        if (file == null) {
+            return System.err;
+        }
+        try {
+            return new PrintStream(new FileOutputStream(file, true), true, StandardCharsets.UTF_8.name());
+        } catch (IOException e) {
+            System.out.println("Could not open slow query log " + file + ", using stderr");
+            return System.err;
+        }
+    }
+
+    // a query from its execute until its rows have been read
+    private static class Execution {
+        private final String sql;
+        private final String parameters;
+        private final long start;
+        private long rows = 0;
+        private boolean finished = false;
+
+        Execution(String sql, String parameters, long start) {
+            this.sql = sql;
+            this.parameters = parameters;
+            this.start = start;
+        }
+
+        void finish() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            Metrics.recordRowsRead(rows);
+            report(sql, parameters, System.nanoTime() - start, rows);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package scheduler.db;
+
+import scheduler.util.Util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Runs a unit of work in a single transaction on a pooled connection, retrying it when
+// the database picks it as a deadlock victim or reports a serialization failure.
+public class TransactionManager {
+
+    private static final int maxAttempts = Util.getIntEnv("TransactionMaxAttempts", 5);
+    private static final int baseBackoffMillis = 10;
+
+    // SQL Server error code for "transaction was deadlocked ... and has been chosen as the deadlock victim"
+    private static final int SQL_SERVER_DEADLOCK = 1205;
+    // SQL Server error codes for a primary key or unique constraint and a unique index violation
+    private static final int SQL_SERVER_PK_VIOLATION = 2627;
+    private static final int SQL_SERVER_DUPLICATE_KEY = 2601;
+
+    public interface Work<T> {
+        T run(Connection con) throws SQLException;
+    }
+
+    public static <T> T run(Work<T> work) throws SQLException {
+        for (int attempt = 1; ; attempt++) {
+            try (Connection con = ConnectionManager.getPool().borrow()) {
+                con.setAutoCommit(false);
+                try {
+                    T result = work.run(con);
+                    con.commit();
+                    return result;
+                } catch (SQLException | RuntimeException e) {
+                    try {
+                        con.rollback();
+                    } catch (SQLException rollbackFailure) {
+                        e.addSuppressed(rollbackFailure);
+                    }
+                    throw e;
+                }
+            } catch (SQLException e) {
+                if (attempt >= maxAttempts || !isRetryable(e)) {
+                    throw e;
+                }
+                backoff(attempt);
+            }
+        }
+    }
+
+    public static boolean isRetryable(SQLException e) {
+        for (SQLException cur = e; cur != null; cur = cur.getNextException()) {
+            if (cur.getErrorCode() == SQL_SERVER_DEADLOCK || "40001".equals(cur.getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // true if the statement failed because a row with the same key already exists
+    public static boolean isDuplicateKey(SQLException e) {
+        for (SQLException cur = e; cur != null; cur = cur.getNextException()) {
+            int code = cur.getErrorCode();
+            String state = cur.getSQLState();
+            // 23505 is a unique violation on other databases; the rest of class 23, e.g. a foreign
+            // key violation, is a real error
+            if (code == SQL_SERVER_PK_VIOLATION || code == SQL_SERVER_DUPLICATE_KEY || "23505".equals(state)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // randomized exponential backoff so that the deadlocked transactions do not collide again
+    private static void backoff(int attempt) throws SQLException {
+        long max = (long) baseBackoffMillis << Math.min(attempt, 6);
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(max / 2, max + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while retrying transaction", e);
+        }
+    }
+}
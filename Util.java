@@ -1,41 +1,48 @@
 package scheduler.util;
 
-import javax.crypto.SecretKeyFactory;
-import javax.crypto.spec.PBEKeySpec;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
-import java.security.spec.InvalidKeySpecException;
-import java.security.spec.KeySpec;
 import java.util.Arrays;
 
 public class Util {
 
-    // constants for handling password
+    // constants for handling password, these are the parameters of the fixed-size hashes
+    // stored before PasswordHash records and are only needed to verify those
     private static final int HASH_STRENGTH = 10;
     private static final int KEY_LENGTH = 16;
+    private static final int SALT_LENGTH = 16;
+
+    private static final PasswordHasher hasher =
+            new PasswordHasher("PBKDF2WithHmacSHA1", HASH_STRENGTH, KEY_LENGTH, SALT_LENGTH);
+
+    public static PasswordHasher getHasher() {
+        return hasher;
+    }
 
     public static byte[] generateSalt() {
         // Generate a random cryptographic salt
-        SecureRandom random = new SecureRandom();
-        byte[] salt = new byte[16];
-        random.nextBytes(salt);
-        return salt;
+        return hasher.generateSalt();
     }
 
     public static byte[] generateHash(String password, byte[] salt) {
-        // Specify the hash parameters
-        KeySpec spec = new PBEKeySpec(password.toCharArray(), salt, HASH_STRENGTH, KEY_LENGTH);
+        return hasher.generateHash(password, salt);
+    }
 
-        // Generate the hash
-        SecretKeyFactory factory = null;
-        byte[] hash = null;
+    // reads an integer setting from the environment, falling back to the default when unset or malformed
+    public static int getIntEnv(String name, int defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
         try {
-            factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
-            hash = factory.generateSecret(spec).getEncoded();
-        } catch (NoSuchAlgorithmException | InvalidKeySpecException ex) {
-            throw new IllegalStateException();
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
         }
-        return hash;
+    }
+
+    // reads a setting from the environment, falling back to the default when unset
+    public static String getStringEnv(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isEmpty() ? defaultValue : value;
     }
 
     public static byte[] trim(byte[] bytes)
@@ -1,11 +1,13 @@
 package scheduler.model;
 
 import scheduler.db.ConnectionManager;
+import scheduler.db.TransactionManager;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Map;
 
 public class Vaccine {
     private final String vaccineName;
@@ -35,8 +37,7 @@ public class Vaccine {
         Connection con = cm.createConnection();
 
         String addDoses = "INSERT INTO vaccines VALUES (?, ?)";
-        try {
-            PreparedStatement statement = con.prepareStatement(addDoses);
+        try (PreparedStatement statement = con.prepareStatement(addDoses)) {
             statement.setString(1, this.vaccineName);
             statement.setInt(2, this.availableDoses);
             statement.executeUpdate();
@@ -47,22 +48,48 @@ public class Vaccine {
         }
     }
 
-    // Increment the available doses
+    // adds doses to several vaccines in a single transaction, creating the vaccines that do not
+    // exist yet; both steps are sent as one JDBC batch each
+    public static void addDosesToDB(Map<String, Integer> doses) throws SQLException {
+        String addVaccine = "INSERT INTO Vaccines (Name, Doses) SELECT ?, 0 " +
+                "WHERE NOT EXISTS (SELECT 1 FROM Vaccines WHERE Name = ?)";
+        String addDoses = "UPDATE Vaccines SET Doses = Doses + ? WHERE Name = ?";
+        TransactionManager.run(con -> {
+            try (PreparedStatement statement = con.prepareStatement(addVaccine)) {
+                for (String vaccineName : doses.keySet()) {
+                    statement.setString(1, vaccineName);
+                    statement.setString(2, vaccineName);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+            try (PreparedStatement statement = con.prepareStatement(addDoses)) {
+                for (Map.Entry<String, Integer> entry : doses.entrySet()) {
+                    statement.setInt(1, entry.getValue());
+                    statement.setString(2, entry.getKey());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+            return null;
+        });
+    }
+
+    // Increment the available doses; the database adds them to whatever it holds, so concurrent
+    // updates are not lost
     public void increaseAvailableDoses(int num) throws SQLException {
         if (num <= 0) {
             throw new IllegalArgumentException("Argument cannot be negative!");
         }
-        this.availableDoses += num;
-
         ConnectionManager cm = new ConnectionManager();
         Connection con = cm.createConnection();
 
-        String removeAvailability  = "UPDATE vaccines SET Doses = ? WHERE name = ?;";
-        try {
-            PreparedStatement statement = con.prepareStatement(removeAvailability);
-            statement.setInt(1, this.availableDoses);
+        String addDoses = "UPDATE Vaccines SET Doses = Doses + ? WHERE Name = ?";
+        try (PreparedStatement statement = con.prepareStatement(addDoses)) {
+            statement.setInt(1, num);
             statement.setString(2, this.vaccineName);
             statement.executeUpdate();
+            this.availableDoses += num;
         } catch (SQLException e) {
             throw new SQLException();
         } finally {
@@ -70,26 +97,30 @@ public class Vaccine {
         }
     }
 
-    // Decrement the available doses
+    // Decrement the available doses; only succeeds if the database still has enough of them
     public void decreaseAvailableDoses(int num) throws SQLException {
-        if (this.availableDoses - num < 0) {
-            throw new IllegalArgumentException("Not enough available doses!");
+        if (num <= 0) {
+            throw new IllegalArgumentException("Argument cannot be negative!");
         }
-        this.availableDoses -= num;
         ConnectionManager cm = new ConnectionManager();
         Connection con = cm.createConnection();
 
-        String removeAvailability  = "UPDATE vaccines SET Doses = ? WHERE name = ?;";
-        try {
-            PreparedStatement statement = con.prepareStatement(removeAvailability);
-            statement.setInt(1, this.availableDoses);
+        String removeDoses = "UPDATE Vaccines SET Doses = Doses - ? WHERE Name = ? AND Doses >= ?";
+        int updated;
+        try (PreparedStatement statement = con.prepareStatement(removeDoses)) {
+            statement.setInt(1, num);
             statement.setString(2, this.vaccineName);
-            statement.executeUpdate();
+            statement.setInt(3, num);
+            updated = statement.executeUpdate();
         } catch (SQLException e) {
             throw new SQLException();
         } finally {
             cm.closeConnection();
         }
+        if (updated == 0) {
+            throw new IllegalArgumentException("Not enough available doses!");
+        }
+        this.availableDoses -= num;
     }
 
     @Override
@@ -127,8 +158,7 @@ public class Vaccine {
             Connection con = cm.createConnection();
 
             String getVaccine = "SELECT Name, Doses FROM Vaccines WHERE Name = ?";
-            try {
-                PreparedStatement statement = con.prepareStatement(getVaccine);
+            try (PreparedStatement statement = con.prepareStatement(getVaccine)) {
                 statement.setString(1, this.vaccineName);
                 ResultSet resultSet = statement.executeQuery();
                 while (resultSet.next()) {
@@ -0,0 +1,108 @@
+package scheduler;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchRunnerTest {
+
+    // {p}, {c}, {v} and {d} are replaced with names and dates of each replay's own
+    private static final List<String> script = Arrays.asList(
+            "create_patient {p}1 weak",
+            "create_patient {p}2 Batch!Passw0rd",
+            "create_patient {p}2 Batch!Passw0rd",
+            "create_patient {p}3",
+            "create_caregiver {c} Batch!Passw0rd",
+            "create_caregiver {c}x short",
+            "login_caregiver {c} Batch!Passw0rd",
+            "add_doses {v} 5",
+            "add_doses {v} five",
+            "add_doses {v} -1",
+            "add_doses {v} 2",
+            "upload_availability {d}",
+            "upload_availability {d}",
+            "upload_availability 2100-13-45",
+            "logout",
+            "quit");
+
+    @TempDir
+    static Path dir;
+
+    @BeforeAll
+    static void useDatabase() {
+        EmbeddedDatabase.use();
+    }
+
+    @Test
+    void groupedCommandsReportWhatTheyWouldAlone() throws Exception {
+        List<String[]> grouped = replay(500);
+        List<String[]> single = replay(1);
+        assertEquals(single.size(), grouped.size());
+        boolean shared = false;
+        for (int i = 0; i < single.size(); i++) {
+            String[] expected = single.get(i);
+            String[] actual = grouped.get(i);
+            String line = String.join(" ", expected);
+            assertEquals(expected[0], actual[0], line);
+            assertEquals(expected[1], actual[1], line);
+            assertEquals(expected[2], actual[2], line);
+            assertEquals(expected[4], actual[4], line);
+            shared |= !actual[3].equals("1");
+        }
+        assertTrue(shared, "nothing was grouped");
+    }
+
+    @Test
+    void statusesFollowTheConsole() throws Exception {
+        List<String> statuses = new ArrayList<>();
+        for (String[] result : replay(500)) {
+            statuses.add(result[2]);
+        }
+        assertEquals(Arrays.asList("ok", "ok", "ok", "rejected", "ok", "ok", "ok", "ok", "failed", "ok", "ok",
+                "ok", "ok", "ok", "ok", "ok"), statuses);
+    }
+
+    // runs the script with names of its own; returns line, command, status, group and output of every
+    // result, with the names put back as placeholders
+    private static List<String[]> replay(int groupSize) throws Exception {
+        String patient = EmbeddedDatabase.name("batch_p");
+        String caregiver = EmbeddedDatabase.name("batch_c");
+        String vaccine = EmbeddedDatabase.name("batch_v");
+        String date = EmbeddedDatabase.date().toString();
+        List<String> lines = new ArrayList<>();
+        for (String line : script) {
+            lines.add(line.replace("{p}", patient).replace("{c}", caregiver).replace("{v}", vaccine)
+                    .replace("{d}", date));
+        }
+        Path file = Files.createTempFile(dir, "batch", ".txt");
+        Files.write(file, lines, StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        try (PrintStream out = new PrintStream(log, true, StandardCharsets.UTF_8)) {
+            BatchRunner.run(file, out, groupSize);
+        }
+        List<String[]> results = new ArrayList<>();
+        for (String line : log.toString(StandardCharsets.UTF_8).split("\n")) {
+            if (line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\t", -1);
+            results.add(new String[]{fields[0], fields[1], fields[2], fields[3],
+                    fields[5].replace(patient, "{p}").replace(caregiver, "{c}").replace(vaccine, "{v}")
+                            .replace(date, "{d}")});
+        }
+        return results;
+    }
+}
@@ -0,0 +1,80 @@
+package scheduler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommandLineTest {
+
+    private final CommandLine line = new CommandLine();
+
+    @Test
+    void singleSpacedLinesSplitLikeBefore() {
+        String[] lines = {"login_patient alice Passw0rd!", "reserve 2026-11-01 Pfizer", "logout",
+                "upload_availability 2026-11-01 2026-11-05 MON,WED"};
+        for (String text : lines) {
+            assertEquals(List.of(text.split(" ")), tokens(text));
+        }
+    }
+
+    @Test
+    void extraWhitespaceSeparatesNoEmptyTokens() {
+        assertEquals(List.of("reserve", "2026-11-01", "Pfizer"), tokens("  reserve   2026-11-01\tPfizer  "));
+        assertEquals(List.of("a", "b"), tokens("a\t\t b\r\n"));
+    }
+
+    @Test
+    void blankLinesHaveNoTokens() {
+        assertEquals(0, line.parse("").size());
+        assertEquals(0, line.parse("   \t ").size());
+        assertThrows(IndexOutOfBoundsException.class, () -> line.get(0));
+        assertEquals(0, line.tokenLength(0));
+    }
+
+    @Test
+    void manyTokensGrowTheArrays() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            text.append(" t").append(i);
+        }
+        line.parse(text.toString());
+        assertEquals(20, line.size());
+        assertEquals("t19", line.get(19));
+    }
+
+    @Test
+    void reuseForgetsThePreviousLine() {
+        line.parse("create_patient alice Passw0rd!");
+        line.parse("quit");
+        assertEquals(1, line.size());
+        assertFalse(line.tokenEquals(1, "alice"));
+        assertEquals("quit", line.getLine());
+    }
+
+    @Test
+    void tokenEqualsComparesWholeTokens() {
+        line.parse("search_caregiver_schedule 2026-11-01");
+        assertTrue(line.tokenEquals(0, "search_caregiver_schedule"));
+        assertFalse(line.tokenEquals(0, "search"));
+        assertFalse(line.tokenEquals(0, "search_caregiver_schedules"));
+        assertTrue(line.tokenEquals(1, "2026-11-01"));
+        assertFalse(line.tokenEquals(-1, "search"));
+        assertFalse(line.tokenEquals(2, ""));
+        assertEquals(10, line.tokenLength(1));
+    }
+
+    private List<String> tokens(String text) {
+        line.parse(text);
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < line.size(); i++) {
+            tokens.add(line.get(i));
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,138 @@
+package scheduler;
+
+import org.junit.jupiter.api.Test;
+import scheduler.model.Caregiver;
+import scheduler.model.Patient;
+import scheduler.util.Metrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class CommandRegistryTest {
+
+    private final CommandRegistry registry = new CommandRegistry();
+    private final List<String> ran = new ArrayList<>();
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private final Session session = new Session(new PrintStream(output, true, StandardCharsets.UTF_8));
+
+    CommandRegistryTest() {
+        registry.register(command("registry_any").args(0, 1).build());
+        registry.register(command("registry_patient").args(1).role(Command.Role.PATIENT).build());
+        registry.register(command("registry_caregiver").args(1).role(Command.Role.CAREGIVER).build());
+        registry.register(command("registry_logged_out").args(2).role(Command.Role.LOGGED_OUT)
+                .usageError("Login failed.").build());
+        registry.register(command("registry_local").role(Command.Role.LOCAL).build());
+        registry.register(new Command.CommandBuilder("registry_throws", (s, args) -> {
+            throw new IllegalStateException("expected by the test");
+        }).build());
+    }
+
+    @Test
+    void findsCommandsByName() {
+        CommandLine line = new CommandLine();
+        assertEquals("registry_any", registry.find(line.parse(" registry_any  x")).getName());
+        assertNull(registry.find(line.parse("registry_an")));
+        assertNull(registry.find(line.parse("registry_anything_else_entirely")));
+        assertNull(registry.find(line.parse("")));
+    }
+
+    @Test
+    void registeringAgainReplaces() {
+        Command replacement = command("registry_any").args(3).build();
+        registry.register(replacement);
+        assertSame(replacement, registry.find(new CommandLine().parse("registry_any")));
+    }
+
+    @Test
+    void runsWhenRoleAndArgumentsFit() {
+        assertEquals(CommandRegistry.Outcome.RAN, dispatch("registry_any"));
+        assertEquals(CommandRegistry.Outcome.RAN, dispatch("registry_any\tone"));
+        assertEquals(CommandRegistry.Outcome.RAN, dispatch("registry_logged_out a b"));
+        assertEquals(CommandRegistry.Outcome.RAN, dispatch("registry_local"));
+        assertEquals(List.of("registry_any", "registry_any", "registry_logged_out", "registry_local"), ran);
+    }
+
+    @Test
+    void refusesUnknownAndEmptyLines() {
+        assertEquals(CommandRegistry.Outcome.REJECTED, dispatch("   "));
+        assertEquals("Please try again!", take());
+        assertEquals(CommandRegistry.Outcome.REJECTED, dispatch("registry_unknown"));
+        assertEquals("Invalid operation name!", take());
+        assertEquals(List.of(), ran);
+    }
+
+    @Test
+    void refusesTheWrongNumberOfArguments() {
+        long rejected = rejected("registry_logged_out");
+        assertEquals(CommandRegistry.Outcome.REJECTED, dispatch("registry_logged_out a"));
+        assertEquals("Login failed.", take());
+        assertEquals(CommandRegistry.Outcome.REJECTED, dispatch("registry_any a b"));
+        assertEquals("Please try again!", take());
+        assertEquals(rejected + 1, rejected("registry_logged_out"));
+        assertEquals(List.of(), ran);
+    }
+
+    @Test
+    void refusesTheWrongRole() {
+        assertEquals(CommandRegistry.Outcome.REJECTED, dispatch("registry_patient x"));
+        // logged out users are asked to log in at all
+        assertEquals("Please login first!", take());
+        assertEquals(CommandRegistry.Outcome.REJECTED, dispatch("registry_caregiver x"));
+        assertEquals("Please login as a caregiver first!", take());
+
+        session.setCurrentCaregiver(new Caregiver.CaregiverBuilder("registry_c", null, null).build());
+        assertEquals(CommandRegistry.Outcome.RAN, dispatch("registry_caregiver x"));
+        assertEquals(CommandRegistry.Outcome.REJECTED, dispatch("registry_patient x"));
+        assertEquals("Please login as a patient first!", take());
+        assertEquals(CommandRegistry.Outcome.REJECTED, dispatch("registry_logged_out a b"));
+        assertEquals("User already logged in.", take());
+
+        session.setCurrentCaregiver(null);
+        session.setCurrentPatient(new Patient.PatientBuilder("registry_p", null, null).build());
+        assertEquals(CommandRegistry.Outcome.RAN, dispatch("registry_patient x"));
+        assertEquals(List.of("registry_caregiver", "registry_patient"), ran);
+    }
+
+    @Test
+    void refusesLocalCommandsToNetworkClients() {
+        Session remote = new Session(new PrintStream(output, true, StandardCharsets.UTF_8), false);
+        assertEquals(CommandRegistry.Outcome.REJECTED,
+                registry.dispatch(remote, remote.getCommandLine().parse("registry_local")));
+        assertEquals("Only available on the local console.", take());
+        assertEquals(List.of(), ran);
+    }
+
+    @Test
+    void handlerExceptionFailsOnlyTheCommand() {
+        assertEquals(CommandRegistry.Outcome.FAILED, dispatch("registry_throws"));
+        assertEquals(1, Metrics.getCommands().get("registry_throws").getErrors());
+        assertEquals(CommandRegistry.Outcome.RAN, dispatch("registry_any"));
+    }
+
+    private Command.CommandBuilder command(String name) {
+        return new Command.CommandBuilder(name, (s, args) -> ran.add(args.get(0)));
+    }
+
+    private CommandRegistry.Outcome dispatch(String text) {
+        output.reset();
+        return registry.dispatch(session, session.getCommandLine().parse(text));
+    }
+
+    private String take() {
+        String text = output.toString(StandardCharsets.UTF_8).trim();
+        output.reset();
+        return text;
+    }
+
+    private static long rejected(String command) {
+        Metrics.CommandStats stats = Metrics.getCommands().get(command);
+        return stats == null ? 0 : stats.getRejected();
+    }
+}
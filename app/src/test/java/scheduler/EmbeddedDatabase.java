@@ -0,0 +1,79 @@
+package scheduler;
+
+import scheduler.db.ConnectionManager;
+import scheduler.db.DataSourceConfig;
+import scheduler.service.InventoryCache;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// The in-memory database the tests share. The connection pool and the caches are process-wide,
+// so every test works with user, vaccine and date names of its own instead of a fresh database.
+public class EmbeddedDatabase {
+
+    public static final String URL = "jdbc:h2:mem:scheduler_test;MODE=MSSQLServer;DB_CLOSE_DELAY=-1";
+
+    private static final AtomicInteger names = new AtomicInteger();
+    private static final AtomicInteger dates = new AtomicInteger();
+
+    // points the connection manager at the shared database, unless it already is
+    public static synchronized void use() {
+        if (!ConnectionManager.getConfig().getUrl().equals(URL)) {
+            ConnectionManager.shutdown();
+            ConnectionManager.configure(new DataSourceConfig.DataSourceConfigBuilder(URL)
+                    .credentials("sa", "").poolSize(1, 32).schema("create.sql").build());
+            InventoryCache.invalidateAll();
+        }
+    }
+
+    // a name no other test uses
+    public static String name(String prefix) {
+        return prefix + names.incrementAndGet();
+    }
+
+    // a date no other test uses
+    public static Date date() {
+        return Date.valueOf(LocalDate.of(2100, 1, 1).plusDays(dates.incrementAndGet()));
+    }
+
+    public static int update(String sql, Object... parameters) throws SQLException {
+        try (Connection con = ConnectionManager.getPool().borrow();
+             PreparedStatement statement = prepare(con, sql, parameters)) {
+            return statement.executeUpdate();
+        }
+    }
+
+    // the first column of the first row
+    public static int queryInt(String sql, Object... parameters) throws SQLException {
+        try (Connection con = ConnectionManager.getPool().borrow();
+             PreparedStatement statement = prepare(con, sql, parameters);
+             ResultSet resultSet = statement.executeQuery()) {
+            if (!resultSet.next()) {
+                throw new SQLException("No rows for " + sql);
+            }
+            return resultSet.getInt(1);
+        }
+    }
+
+    // the first column of the first row, null for no row
+    public static byte[] queryBytes(String sql, Object... parameters) throws SQLException {
+        try (Connection con = ConnectionManager.getPool().borrow();
+             PreparedStatement statement = prepare(con, sql, parameters);
+             ResultSet resultSet = statement.executeQuery()) {
+            return resultSet.next() ? resultSet.getBytes(1) : null;
+        }
+    }
+
+    private static PreparedStatement prepare(Connection con, String sql, Object... parameters) throws SQLException {
+        PreparedStatement statement = con.prepareStatement(sql);
+        for (int i = 0; i < parameters.length; i++) {
+            statement.setObject(i + 1, parameters[i]);
+        }
+        return statement;
+    }
+}
@@ -0,0 +1,124 @@
+package scheduler.db;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AppointmentIdAllocatorTest {
+
+    private ConnectionPool pool;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        // a sequence of its own, so the blocks handed out are known
+        pool = new ConnectionPool("jdbc:h2:mem:appointment_ids;DB_CLOSE_DELAY=-1", "sa", "", 0, 8,
+                60_000, 1_000, 1_000, 8);
+        try (Connection con = pool.borrow(); Statement statement = con.createStatement()) {
+            statement.execute("CREATE SEQUENCE AppointmentIdBlocks START WITH 1 INCREMENT BY 1");
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        try (Connection con = pool.borrow(); Statement statement = con.createStatement()) {
+            statement.execute("DROP SEQUENCE AppointmentIdBlocks");
+        }
+        pool.close();
+    }
+
+    @Test
+    void blocksRollOverInSequenceOrder() throws Exception {
+        AppointmentIdAllocator allocator = new AppointmentIdAllocator(3);
+        List<Integer> ids = new ArrayList<>();
+        try (Connection con = pool.borrow()) {
+            for (int i = 0; i < 7; i++) {
+                ids.add(allocator.nextId(con));
+            }
+        }
+        // block 0 is left to appointments booked before the sequence existed
+        assertEquals(Arrays.asList(3, 4, 5, 6, 7, 8, 9), ids);
+    }
+
+    @Test
+    void allocatorsSharingTheSequenceNeverCollide() throws Exception {
+        AppointmentIdAllocator first = new AppointmentIdAllocator(4);
+        AppointmentIdAllocator second = new AppointmentIdAllocator(4);
+        Set<Integer> ids = new HashSet<>();
+        try (Connection con = pool.borrow()) {
+            for (int i = 0; i < 10; i++) {
+                assertTrue(ids.add(first.nextId(con)));
+                assertTrue(ids.add(second.nextId(con)));
+            }
+        }
+        assertEquals(20, ids.size());
+    }
+
+    @Test
+    void concurrentCallersGetDistinctIds() throws Exception {
+        int threads = 8;
+        int perThread = 500;
+        // a small block makes the threads refill often and race for it
+        AppointmentIdAllocator allocator = new AppointmentIdAllocator(7);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<Integer>>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    List<Integer> taken = new ArrayList<>();
+                    try (Connection con = pool.borrow()) {
+                        start.await();
+                        for (int i = 0; i < perThread; i++) {
+                            taken.add(allocator.nextId(con));
+                        }
+                    }
+                    return taken;
+                }));
+            }
+            start.countDown();
+            Set<Integer> ids = new HashSet<>();
+            for (Future<List<Integer>> future : futures) {
+                for (int id : future.get()) {
+                    assertTrue(ids.add(id), "ID " + id + " handed out twice");
+                }
+            }
+            assertEquals(threads * perThread, ids.size());
+            // a refill that lost the race does not waste a block
+            long blocks = ids.stream().map(id -> id / 7).distinct().count();
+            assertEquals((threads * perThread + 6) / 7, blocks);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void blockPastTheLargestIdIsRefused() throws Exception {
+        AppointmentIdAllocator allocator = new AppointmentIdAllocator(Integer.MAX_VALUE);
+        try (Connection con = pool.borrow()) {
+            SQLException e = assertThrows(SQLException.class, () -> allocator.nextId(con));
+            assertTrue(e.getMessage().startsWith("No appointment IDs left"));
+        }
+    }
+
+    @Test
+    void blockSizeMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new AppointmentIdAllocator(0));
+    }
+}
@@ -0,0 +1,62 @@
+package scheduler.db;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConnectionManagerTest {
+
+    // configure only takes effect once the pool of another test is gone
+    @BeforeEach
+    @AfterEach
+    void shutdown() {
+        ConnectionManager.shutdown();
+    }
+
+    @Test
+    void schemaIsAppliedOncePerDatabase() throws Exception {
+        ConnectionManager.configure(new DataSourceConfig.DataSourceConfigBuilder(
+                "jdbc:h2:mem:manager_reopen;MODE=MSSQLServer;DB_CLOSE_DELAY=-1")
+                .credentials("sa", "").schema("create.sql").build());
+        assertNotNull(ConnectionManager.getPool());
+        try (Connection con = ConnectionManager.getPool().borrow();
+             Statement statement = con.createStatement()) {
+            statement.executeUpdate("INSERT INTO Vaccines (Name, Doses) VALUES ('Kept', 1)");
+        }
+        ConnectionManager.shutdown();
+
+        // the in-memory database is still there, create.sql would fail on its tables
+        try (Connection con = ConnectionManager.getPool().borrow();
+             Statement statement = con.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM Vaccines")) {
+            assertTrue(resultSet.next());
+            assertEquals(1, resultSet.getInt(1));
+        }
+    }
+
+    @Test
+    void withoutSchemaThePoolStartsWithoutConnecting() {
+        // nothing listens there; commands fail one by one, but the pool is created
+        ConnectionManager.configure(new DataSourceConfig.DataSourceConfigBuilder(
+                "jdbc:h2:tcp://127.0.0.1:1/unreachable").credentials("sa", "").poolSize(0, 2).build());
+        assertNotNull(ConnectionManager.getPool());
+    }
+
+    @Test
+    void unreachableDatabaseIsNotReportedAsSchemaFailure() {
+        ConnectionManager.configure(new DataSourceConfig.DataSourceConfigBuilder(
+                "jdbc:h2:tcp://127.0.0.1:1/unreachable").credentials("sa", "").poolSize(0, 2)
+                .borrowTimeoutMillis(1000).schema("create.sql").build());
+        IllegalStateException e = assertThrows(IllegalStateException.class, ConnectionManager::getPool);
+        assertTrue(e.getMessage().startsWith("Could not connect"));
+    }
+}
@@ -0,0 +1,42 @@
+package scheduler.db;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DataSourceConfigTest {
+
+    @Test
+    void schemaIsFoundOnTheClasspath() throws Exception {
+        // the tests run in app/, where there is no create.sql file
+        DataSourceConfig config = new DataSourceConfig.DataSourceConfigBuilder("jdbc:h2:mem:schema_test;MODE=MSSQLServer")
+                .credentials("sa", "")
+                .schema("create.sql")
+                .build();
+        try (Connection con = DriverManager.getConnection(config.getUrl(), "sa", "")) {
+            config.applySchema(con);
+            try (ResultSet tables = con.getMetaData().getTables(null, null, "PATIENTS", null)) {
+                assertTrue(tables.next());
+            }
+        }
+    }
+
+    @Test
+    void missingSchemaFailsRightAway() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () ->
+                new DataSourceConfig.DataSourceConfigBuilder("jdbc:h2:mem:missing").schema("no-such-schema.sql").build());
+        assertTrue(e.getMessage().contains("no-such-schema.sql"));
+    }
+
+    @Test
+    void statementsAreSplitWithoutComments() {
+        assertEquals(2, DataSourceConfig.splitStatements("-- tables\nCREATE TABLE A (X INT);\n" +
+                "CREATE TABLE B (Y INT); -- done\n").size());
+    }
+}
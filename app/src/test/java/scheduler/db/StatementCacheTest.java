@@ -0,0 +1,79 @@
+package scheduler.db;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StatementCacheTest {
+
+    private static final String query = "SELECT N FROM Numbers ORDER BY N";
+
+    private ConnectionPool pool;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        // a single connection, so every borrow gets the same statement cache
+        pool = new ConnectionPool("jdbc:h2:mem:statement_cache;DB_CLOSE_DELAY=-1", "sa", "", 0, 1,
+                60_000, 1_000, 1_000, 8);
+        try (Connection con = pool.borrow(); Statement statement = con.createStatement()) {
+            statement.execute("CREATE TABLE Numbers (N INT PRIMARY KEY)");
+            for (int i = 0; i < 20; i++) {
+                statement.execute("INSERT INTO Numbers VALUES (" + i + ")");
+            }
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        try (Connection con = pool.borrow(); Statement statement = con.createStatement()) {
+            statement.execute("DROP TABLE Numbers");
+        }
+        pool.close();
+    }
+
+    @Test
+    void settingsDoNotReachTheNextUser() throws SQLException {
+        try (Connection con = pool.borrow(); PreparedStatement statement = con.prepareStatement(query)) {
+            statement.setMaxRows(2);
+            statement.setFetchSize(1);
+            statement.setQueryTimeout(5);
+            assertEquals(2, count(statement));
+        }
+        try (Connection con = pool.borrow(); PreparedStatement statement = con.prepareStatement(query)) {
+            assertEquals(1, pool.getStatementCacheHits());
+            assertEquals(0, statement.getMaxRows());
+            assertEquals(0, statement.getQueryTimeout());
+            assertEquals(20, count(statement));
+        }
+    }
+
+    @Test
+    void settingsAreRestoredWhenTheConnectionIsReturned() throws SQLException {
+        // the statement is left open, the connection going back reclaims it
+        try (Connection con = pool.borrow()) {
+            con.prepareStatement(query).setMaxRows(3);
+        }
+        try (Connection con = pool.borrow(); PreparedStatement statement = con.prepareStatement(query)) {
+            assertEquals(1, pool.getStatementCacheHits());
+            assertEquals(20, count(statement));
+        }
+    }
+
+    private static int count(PreparedStatement statement) throws SQLException {
+        int rows = 0;
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                rows++;
+            }
+        }
+        return rows;
+    }
+}
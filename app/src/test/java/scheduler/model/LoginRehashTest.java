@@ -0,0 +1,76 @@
+package scheduler.model;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import scheduler.EmbeddedDatabase;
+import scheduler.util.PasswordHash;
+import scheduler.util.PasswordHashTest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LoginRehashTest {
+
+    @BeforeAll
+    static void useDatabase() {
+        EmbeddedDatabase.use();
+    }
+
+    @Test
+    void legacyPatientIsUpgradedOnLogin() throws Exception {
+        String username = legacyAccount("Patients");
+        assertNull(new Patient.PatientGetter(username, "Legacy!Passw0rd?").get());
+        // a failed login leaves the stored hash alone
+        assertNotNull(EmbeddedDatabase.queryBytes("SELECT Salt FROM Patients WHERE Username = ?", username));
+
+        Patient patient = new Patient.PatientGetter(username, PasswordHashTest.LEGACY_PASSWORD).get();
+        assertNotNull(patient);
+        assertUpgraded("Patients", username);
+        assertNotNull(new Patient.PatientGetter(username, PasswordHashTest.LEGACY_PASSWORD).get());
+    }
+
+    @Test
+    void legacyCaregiverIsUpgradedOnLogin() throws Exception {
+        String username = legacyAccount("Caregivers");
+        assertNull(new Caregiver.CaregiverGetter(username, "Legacy!Passw0rd?").get());
+        assertNotNull(new Caregiver.CaregiverGetter(username, PasswordHashTest.LEGACY_PASSWORD).get());
+        assertUpgraded("Caregivers", username);
+        assertNotNull(new Caregiver.CaregiverGetter(username, PasswordHashTest.LEGACY_PASSWORD).get());
+    }
+
+    @Test
+    void outdatedRecordIsUpgradedOnLogin() throws Exception {
+        String username = EmbeddedDatabase.name("rehash_p");
+        EmbeddedDatabase.update("INSERT INTO Patients (Username, Hash) VALUES (?, ?)", username,
+                PasswordHashTest.record("Passw0rd!", 3));
+        assertNotNull(new Patient.PatientGetter(username, "Passw0rd!").get());
+        assertUpgraded("Patients", username);
+    }
+
+    @Test
+    void currentRecordIsLeftAlone() throws Exception {
+        String username = EmbeddedDatabase.name("rehash_c");
+        byte[] current = PasswordHash.create("Passw0rd!").encode();
+        EmbeddedDatabase.update("INSERT INTO Caregivers (Username, Hash) VALUES (?, ?)", username, current);
+        assertNotNull(new Caregiver.CaregiverGetter(username, "Passw0rd!").get());
+        assertArrayEquals(current,
+                EmbeddedDatabase.queryBytes("SELECT Hash FROM Caregivers WHERE Username = ?", username));
+    }
+
+    private static String legacyAccount(String table) throws Exception {
+        String username = EmbeddedDatabase.name("rehash_legacy");
+        EmbeddedDatabase.update("INSERT INTO " + table + " (Username, Salt, Hash) VALUES (?, ?, ?)", username,
+                PasswordHashTest.LEGACY_SALT, PasswordHashTest.LEGACY_HASH);
+        return username;
+    }
+
+    private static void assertUpgraded(String table, String username) throws Exception {
+        assertNull(EmbeddedDatabase.queryBytes("SELECT Salt FROM " + table + " WHERE Username = ?", username));
+        PasswordHash stored = PasswordHash.decode(
+                EmbeddedDatabase.queryBytes("SELECT Hash FROM " + table + " WHERE Username = ?", username));
+        assertNotNull(stored);
+        assertFalse(stored.needsRehash());
+    }
+}
@@ -0,0 +1,121 @@
+package scheduler.service;
+
+import org.h2.api.Trigger;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import scheduler.EmbeddedDatabase;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AccountImporterTest {
+
+    private static final String password = "Import!Passw0rd";
+
+    @BeforeAll
+    static void useDatabase() {
+        EmbeddedDatabase.use();
+    }
+
+    @Test
+    void headerAndBlankLinesAreSkipped() throws Exception {
+        String first = EmbeddedDatabase.name("import_p");
+        String second = EmbeddedDatabase.name("import_p");
+        AccountImporter.Result result = importPatients(
+                "Username,Password", first + "," + password, "", "  ", second + ", " + password);
+        assertEquals(2, result.getRows());
+        assertEquals(2, result.getImported());
+        assertEquals("", failures(result));
+        assertTrue(exists("Patients", first));
+        assertTrue(exists("Patients", second));
+    }
+
+    @Test
+    void badRowsAreReportedByLine() throws Exception {
+        String taken = EmbeddedDatabase.name("import_p");
+        EmbeddedDatabase.update("INSERT INTO Patients (Username) VALUES (?)", taken);
+        String duplicate = EmbeddedDatabase.name("import_p");
+        String weak = EmbeddedDatabase.name("import_p");
+
+        AccountImporter.Result result = importPatients(
+                duplicate + "," + password,
+                duplicate + "," + password,
+                taken + "," + password,
+                weak + ",password",
+                weak + "," + password + ",extra",
+                "two words," + password);
+        assertEquals(6, result.getRows());
+        assertEquals(1, result.getImported());
+        assertEquals("line 2: duplicate in file; line 3: username taken; line 4: password is weak; " +
+                "line 5: expected username,password; line 6: invalid username", failures(result));
+        assertTrue(exists("Patients", duplicate));
+        assertEquals(0, EmbeddedDatabase.queryInt("SELECT COUNT(*) FROM Patients WHERE Username = ?", weak));
+    }
+
+    @Test
+    void caregiversGoToTheirOwnTable() throws Exception {
+        String username = EmbeddedDatabase.name("import_c");
+        AccountImporter.Result result = AccountImporter.importAccounts(false, reader(username + "," + password));
+        assertEquals(1, result.getImported());
+        assertTrue(exists("Caregivers", username));
+        assertEquals(0, EmbeddedDatabase.queryInt("SELECT COUNT(*) FROM Patients WHERE Username = ?", username));
+    }
+
+    @Test
+    void collidingRowIsInsertedAloneAfterTheChunkFails() throws Exception {
+        String before = EmbeddedDatabase.name("import_p");
+        String colliding = EmbeddedDatabase.name("import_p");
+        String after = EmbeddedDatabase.name("import_p");
+        Collision.usernames.add(colliding);
+        EmbeddedDatabase.update("CREATE TRIGGER IF NOT EXISTS ImportCollision BEFORE INSERT ON Patients " +
+                "FOR EACH ROW CALL \"" + Collision.class.getName() + "\"");
+        try {
+            AccountImporter.Result result = importPatients(
+                    before + "," + password, colliding + "," + password, after + "," + password);
+            // every try at the whole chunk hits the collision, the rows around it still get in
+            assertEquals(2, result.getImported());
+            assertEquals("line 2: username taken", failures(result));
+            assertTrue(exists("Patients", before));
+            assertTrue(exists("Patients", after));
+        } finally {
+            EmbeddedDatabase.update("DROP TRIGGER ImportCollision");
+            Collision.usernames.remove(colliding);
+        }
+    }
+
+    // fails an insert the way the database does when somebody else created the account first
+    public static class Collision implements Trigger {
+        static final Set<String> usernames = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public void fire(Connection con, Object[] oldRow, Object[] newRow) throws SQLException {
+            if (usernames.contains((String) newRow[0])) {
+                throw new SQLException("Duplicate key " + newRow[0], "23505");
+            }
+        }
+    }
+
+    private static AccountImporter.Result importPatients(String... lines) throws Exception {
+        return AccountImporter.importAccounts(true, reader(lines));
+    }
+
+    private static BufferedReader reader(String... lines) {
+        return new BufferedReader(new StringReader(String.join("\n", lines)));
+    }
+
+    private static String failures(AccountImporter.Result result) {
+        return result.getFailures().stream().map(Object::toString).collect(Collectors.joining("; "));
+    }
+
+    private static boolean exists(String table, String username) throws Exception {
+        return EmbeddedDatabase.queryInt("SELECT COUNT(*) FROM " + table + " WHERE Username = ?", username) == 1;
+    }
+}
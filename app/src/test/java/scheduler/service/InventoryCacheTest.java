@@ -0,0 +1,111 @@
+package scheduler.service;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import scheduler.EmbeddedDatabase;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InventoryCacheTest {
+
+    @BeforeAll
+    static void load() throws Exception {
+        EmbeddedDatabase.use();
+        InventoryCache.exists(EmbeddedDatabase.name("inventory_none"));
+    }
+
+    @Test
+    void dosesForAnExistingVaccineAreWrittenBehind() throws Exception {
+        String vaccine = vaccine(5);
+        assertEquals(5, InventoryCache.getDoses(vaccine));
+        InventoryCache.addDoses(vaccine, 3);
+        InventoryCache.addDoses(vaccine, 2);
+        assertEquals(10, InventoryCache.getDoses(vaccine));
+
+        InventoryCache.flush();
+        assertEquals(10, doses(vaccine));
+        assertFalse(InventoryCache.flush(vaccine));
+        assertEquals(10, InventoryCache.getDoses(vaccine));
+    }
+
+    @Test
+    void newVaccineIsWrittenAndListedRightAway() throws Exception {
+        String vaccine = EmbeddedDatabase.name("inventory_v");
+        assertFalse(InventoryCache.exists(vaccine));
+        InventoryCache.addDoses(vaccine, 4);
+        assertEquals(4, doses(vaccine));
+        assertEquals(4, listed().get(vaccine));
+        assertEquals(4, InventoryCache.getDoses(vaccine));
+    }
+
+    @Test
+    void nonPositiveDosesAreRefused() throws Exception {
+        String vaccine = vaccine(1);
+        assertThrows(IllegalArgumentException.class, () -> InventoryCache.addDoses(vaccine, 0));
+        assertThrows(IllegalArgumentException.class, () -> InventoryCache.addDoses(vaccine, -3));
+        assertEquals(1, InventoryCache.getDoses(vaccine));
+    }
+
+    @Test
+    void committedChangeIsApplied() throws Exception {
+        String vaccine = vaccine(5);
+        assertEquals(5, InventoryCache.getDoses(vaccine));
+        EmbeddedDatabase.update("UPDATE Vaccines SET Doses = Doses - 1 WHERE Name = ?", vaccine);
+        InventoryCache.recordCommitted(vaccine, -1);
+        assertEquals(4, InventoryCache.getDoses(vaccine));
+    }
+
+    @Test
+    void committedChangeToAnUnknownVaccineIsListedAndReadAgain() throws Exception {
+        // created behind the cache's back, e.g. in the same transaction as the change
+        String vaccine = vaccine(7);
+        InventoryCache.recordCommitted(vaccine, 7);
+        assertEquals(7, listed().get(vaccine));
+        EmbeddedDatabase.update("UPDATE Vaccines SET Doses = 9 WHERE Name = ?", vaccine);
+        // the first lookup reads the exact count
+        assertEquals(9, InventoryCache.getDoses(vaccine));
+    }
+
+    @Test
+    void invalidatedVaccineIsReadAgain() throws Exception {
+        String vaccine = vaccine(3);
+        assertEquals(3, InventoryCache.getDoses(vaccine));
+        EmbeddedDatabase.update("UPDATE Vaccines SET Doses = 6 WHERE Name = ?", vaccine);
+        assertEquals(3, InventoryCache.getDoses(vaccine));
+        InventoryCache.invalidate(vaccine);
+        assertEquals(6, InventoryCache.getDoses(vaccine));
+    }
+
+    @Test
+    void pendingDosesSurviveAReload() throws Exception {
+        String vaccine = vaccine(2);
+        assertTrue(InventoryCache.exists(vaccine));
+        InventoryCache.addDoses(vaccine, 5);
+        InventoryCache.invalidateAll();
+        assertEquals(7, InventoryCache.getDoses(vaccine));
+        InventoryCache.flush();
+        assertEquals(7, doses(vaccine));
+    }
+
+    private static Map<String, Integer> listed() throws Exception {
+        Map<String, Integer> vaccines = new LinkedHashMap<>();
+        InventoryCache.forEach(vaccines::put);
+        return vaccines;
+    }
+
+    private static String vaccine(int doses) throws Exception {
+        String name = EmbeddedDatabase.name("inventory_v");
+        EmbeddedDatabase.update("INSERT INTO Vaccines (Name, Doses) VALUES (?, ?)", name, doses);
+        return name;
+    }
+
+    private static int doses(String vaccine) throws Exception {
+        return EmbeddedDatabase.queryInt("SELECT Doses FROM Vaccines WHERE Name = ?", vaccine);
+    }
+}
@@ -0,0 +1,178 @@
+package scheduler.service;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import scheduler.EmbeddedDatabase;
+import scheduler.db.AppointmentIdAllocator;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReservationServiceTest {
+
+    private static final int threads = 16;
+
+    private final ReservationService reservations = new ReservationService(new AppointmentIdAllocator(10));
+
+    @BeforeAll
+    static void useDatabase() {
+        EmbeddedDatabase.use();
+    }
+
+    @Test
+    void concurrentReservationsRunOutOfDoses() throws Exception {
+        Outcome outcome = rush(8, 5);
+        assertEquals(5, outcome.count(ReservationService.Status.RESERVED));
+        assertEquals(threads - 5, outcome.count(ReservationService.Status.NO_DOSES) +
+                outcome.count(ReservationService.Status.NO_CAREGIVER));
+        checkInvariants(outcome, 8, 5);
+    }
+
+    @Test
+    void concurrentReservationsRunOutOfCaregivers() throws Exception {
+        Outcome outcome = rush(5, 12);
+        assertEquals(5, outcome.count(ReservationService.Status.RESERVED));
+        assertEquals(threads - 5, outcome.count(ReservationService.Status.NO_CAREGIVER));
+        checkInvariants(outcome, 5, 12);
+    }
+
+    @Test
+    void cancelledSlotCanBeReservedAgain() throws Exception {
+        Date date = EmbeddedDatabase.date();
+        String caregiver = caregiver(date);
+        String vaccine = vaccine(1);
+        String first = patient();
+        String second = patient();
+
+        ReservationService.Reservation booked = reservations.reserve(first, date, vaccine);
+        assertEquals(ReservationService.Status.RESERVED, booked.getStatus());
+        assertEquals(caregiver, booked.getCaregiverUsername());
+        assertEquals(ReservationService.Status.NO_CAREGIVER, reservations.reserve(second, date, vaccine).getStatus());
+
+        // only the patient who booked it can cancel it
+        assertFalse(reservations.cancel(second, true, booked.getAppointmentId()));
+        assertTrue(reservations.cancel(first, true, booked.getAppointmentId()));
+        assertFalse(reservations.cancel(first, true, booked.getAppointmentId()));
+        assertEquals(1, EmbeddedDatabase.queryInt("SELECT Doses FROM Vaccines WHERE Name = ?", vaccine));
+        assertEquals(1, InventoryCache.getDoses(vaccine));
+        assertEquals(1, EmbeddedDatabase.queryInt(
+                "SELECT COUNT(*) FROM Availabilities WHERE Time = ? AND Username = ?", date, caregiver));
+
+        ReservationService.Reservation rebooked = reservations.reserve(second, date, vaccine);
+        assertEquals(ReservationService.Status.RESERVED, rebooked.getStatus());
+        assertEquals(caregiver, rebooked.getCaregiverUsername());
+        assertEquals(0, EmbeddedDatabase.queryInt("SELECT Doses FROM Vaccines WHERE Name = ?", vaccine));
+    }
+
+    @Test
+    void unknownVaccineIsTurnedAway() throws Exception {
+        Date date = EmbeddedDatabase.date();
+        caregiver(date);
+        assertEquals(ReservationService.Status.NO_SUCH_VACCINE,
+                reservations.reserve(patient(), date, EmbeddedDatabase.name("missing")).getStatus());
+    }
+
+    private static class Outcome {
+        private final Date date;
+        private final String vaccine;
+        private final List<ReservationService.Reservation> results = new ArrayList<>();
+
+        Outcome(Date date, String vaccine) {
+            this.date = date;
+            this.vaccine = vaccine;
+        }
+
+        long count(ReservationService.Status status) {
+            return results.stream().filter(r -> r.getStatus() == status).count();
+        }
+    }
+
+    // every thread reserves for a patient of its own at the same time
+    private Outcome rush(int caregivers, int doses) throws Exception {
+        Date date = EmbeddedDatabase.date();
+        for (int i = 0; i < caregivers; i++) {
+            caregiver(date);
+        }
+        Outcome outcome = new Outcome(date, vaccine(doses));
+        List<String> patients = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            patients.add(patient());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<ReservationService.Reservation>> futures = new ArrayList<>();
+        try {
+            for (String patient : patients) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return reservations.reserve(patient, date, outcome.vaccine);
+                }));
+            }
+            start.countDown();
+            for (Future<ReservationService.Reservation> future : futures) {
+                outcome.results.add(future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return outcome;
+    }
+
+    // the checks the load generator makes after a run
+    private static void checkInvariants(Outcome outcome, int caregivers, int doses) throws Exception {
+        int reserved = (int) outcome.count(ReservationService.Status.RESERVED);
+        Set<String> booked = new HashSet<>();
+        Set<Integer> ids = new HashSet<>();
+        for (ReservationService.Reservation reservation : outcome.results) {
+            if (reservation.getStatus() == ReservationService.Status.RESERVED) {
+                assertTrue(booked.add(reservation.getCaregiverUsername()), "caregiver booked twice");
+                assertTrue(ids.add(reservation.getAppointmentId()), "appointment ID handed out twice");
+            }
+        }
+        assertEquals(0, EmbeddedDatabase.queryInt("SELECT COUNT(*) FROM (SELECT CaregiverUsername FROM " +
+                "Appointments WHERE Time = ? GROUP BY CaregiverUsername HAVING COUNT(*) > 1) D", outcome.date));
+        assertEquals(reserved, EmbeddedDatabase.queryInt(
+                "SELECT COUNT(*) FROM Appointments WHERE VaccineName = ?", outcome.vaccine));
+        // every dose is either left or taken by an appointment, and none is below zero
+        assertEquals(doses - reserved, EmbeddedDatabase.queryInt(
+                "SELECT Doses FROM Vaccines WHERE Name = ?", outcome.vaccine));
+        assertEquals(doses - reserved, InventoryCache.getDoses(outcome.vaccine));
+        // a booked slot is gone from Availabilities, the others are all still there
+        assertEquals(0, EmbeddedDatabase.queryInt("SELECT COUNT(*) FROM Appointments A JOIN Availabilities V " +
+                "ON V.Username = A.CaregiverUsername AND V.Time = A.Time WHERE A.VaccineName = ?", outcome.vaccine));
+        assertEquals(caregivers - reserved, EmbeddedDatabase.queryInt(
+                "SELECT COUNT(*) FROM Availabilities WHERE Time = ?", outcome.date));
+    }
+
+    private static String caregiver(Date date) throws Exception {
+        String username = EmbeddedDatabase.name("reserve_c");
+        EmbeddedDatabase.update("INSERT INTO Caregivers (Username) VALUES (?)", username);
+        EmbeddedDatabase.update("INSERT INTO Availabilities (Time, Username) VALUES (?, ?)", date, username);
+        SlotIndex.addFree(date, username);
+        return username;
+    }
+
+    private static String patient() throws Exception {
+        String username = EmbeddedDatabase.name("reserve_p");
+        EmbeddedDatabase.update("INSERT INTO Patients (Username) VALUES (?)", username);
+        return username;
+    }
+
+    private static String vaccine(int doses) throws Exception {
+        String name = EmbeddedDatabase.name("reserve_v");
+        EmbeddedDatabase.update("INSERT INTO Vaccines (Name, Doses) VALUES (?, ?)", name, doses);
+        return name;
+    }
+}
@@ -0,0 +1,65 @@
+package scheduler.service;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import scheduler.EmbeddedDatabase;
+import scheduler.db.AppointmentIdAllocator;
+import scheduler.db.ConnectionManager;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScheduleServiceTest {
+
+    private static final AppointmentIdAllocator allocator = new AppointmentIdAllocator(10);
+
+    @BeforeAll
+    static void useDatabase() {
+        EmbeddedDatabase.use();
+    }
+
+    @Test
+    void pagesStopOneShortOfTheNext() throws Exception {
+        String patient = patientWithAppointments(3);
+        List<Integer> ids = new ArrayList<>();
+        assertTrue(ScheduleService.appointmentsPage(true, patient, -1, 2, (id, vaccine, date, other) -> ids.add(id)));
+        assertEquals(2, ids.size());
+        assertFalse(ScheduleService.appointmentsPage(true, patient, ids.get(1), 2,
+                (id, vaccine, date, other) -> ids.add(id)));
+        assertEquals(3, ids.size());
+    }
+
+    @Test
+    void largestPageSizeShowsEveryAppointment() throws Exception {
+        String patient = patientWithAppointments(3);
+        List<Integer> ids = new ArrayList<>();
+        assertFalse(ScheduleService.appointmentsPage(true, patient, -1, Integer.MAX_VALUE,
+                (id, vaccine, date, other) -> ids.add(id)));
+        assertEquals(3, ids.size());
+    }
+
+    private static String patientWithAppointments(int count) throws Exception {
+        String patient = EmbeddedDatabase.name("schedule_p");
+        String caregiver = EmbeddedDatabase.name("schedule_c");
+        String vaccine = EmbeddedDatabase.name("schedule_v");
+        EmbeddedDatabase.update("INSERT INTO Patients (Username) VALUES (?)", patient);
+        EmbeddedDatabase.update("INSERT INTO Caregivers (Username) VALUES (?)", caregiver);
+        EmbeddedDatabase.update("INSERT INTO Vaccines (Name, Doses) VALUES (?, ?)", vaccine, 0);
+        for (int i = 0; i < count; i++) {
+            Date date = EmbeddedDatabase.date();
+            int id;
+            try (Connection con = ConnectionManager.getPool().borrow()) {
+                id = allocator.nextId(con);
+            }
+            EmbeddedDatabase.update("INSERT INTO Appointments (AppointmentID, PatientUsername, CaregiverUsername, " +
+                    "VaccineName, Time) VALUES (?, ?, ?, ?, ?)", id, patient, caregiver, vaccine, date);
+        }
+        return patient;
+    }
+}
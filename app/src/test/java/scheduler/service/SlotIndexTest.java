@@ -0,0 +1,142 @@
+package scheduler.service;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import scheduler.EmbeddedDatabase;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SlotIndexTest {
+
+    @BeforeAll
+    static void load() throws Exception {
+        EmbeddedDatabase.use();
+        // addFree only records slots once the index is loaded
+        SlotIndex.claim(EmbeddedDatabase.date());
+    }
+
+    @Test
+    void concurrentClaimsGetDistinctCaregivers() throws Exception {
+        Date date = EmbeddedDatabase.date();
+        Set<String> free = freeCaregivers(date, 64);
+        Set<String> claimed = claimConcurrently(date, 16);
+        assertEquals(free, claimed);
+        assertEquals(-1, SlotIndex.claim(date));
+    }
+
+    @Test
+    void releasedSlotCanBeClaimedAgain() throws Exception {
+        Date date = EmbeddedDatabase.date();
+        freeCaregivers(date, 3);
+        int first = SlotIndex.claim(date);
+        int second = SlotIndex.claim(date);
+        int third = SlotIndex.claim(date);
+        assertEquals(-1, SlotIndex.claim(date));
+        SlotIndex.release(date, second);
+        assertEquals(second, SlotIndex.claim(date));
+        assertEquals(-1, SlotIndex.claim(date));
+        SlotIndex.release(date, -1);
+        assertEquals(-1, SlotIndex.claim(date));
+        assertEquals(3, new HashSet<>(List.of(first, second, third)).size());
+    }
+
+    @Test
+    void claimsSpanSeveralChunks() throws Exception {
+        // more caregivers than fit into one 4096-bit chunk
+        Date date = EmbeddedDatabase.date();
+        Set<String> free = freeCaregivers(date, 5000);
+        assertEquals(free, claimConcurrently(date, 8));
+        assertEquals(-1, SlotIndex.claim(date));
+    }
+
+    @Test
+    void caregiversKeepTheirNumberAcrossDates() throws Exception {
+        Date first = EmbeddedDatabase.date();
+        Date second = EmbeddedDatabase.date();
+        String username = EmbeddedDatabase.name("slot_c");
+        SlotIndex.addFree(first, username);
+        SlotIndex.addFree(second, username);
+        // adding it twice does not make two slots
+        SlotIndex.addFree(second, username);
+        int id = SlotIndex.claim(first);
+        assertEquals(username, SlotIndex.getUsername(id));
+        assertEquals(id, SlotIndex.claim(second));
+        assertEquals(-1, SlotIndex.claim(second));
+    }
+
+    @Test
+    void removedSlotIsNotClaimed() throws Exception {
+        Date date = EmbeddedDatabase.date();
+        String kept = EmbeddedDatabase.name("slot_c");
+        String removed = EmbeddedDatabase.name("slot_c");
+        SlotIndex.addFree(date, kept);
+        SlotIndex.addFree(date, removed);
+        SlotIndex.remove(date, removed);
+        assertEquals(kept, SlotIndex.getUsername(SlotIndex.claim(date)));
+        assertEquals(-1, SlotIndex.claim(date));
+    }
+
+    @Test
+    void slotsAreLoadedFromTheDatabase() throws Exception {
+        Date date = EmbeddedDatabase.date();
+        String username = EmbeddedDatabase.name("slot_db");
+        EmbeddedDatabase.update("INSERT INTO Caregivers (Username) VALUES (?)", username);
+        EmbeddedDatabase.update("INSERT INTO Availabilities (Time, Username) VALUES (?, ?)", date, username);
+        // written behind the index's back, so it only shows up after a reload
+        assertEquals(-1, SlotIndex.claim(date));
+        SlotIndex.invalidate();
+        assertEquals(username, SlotIndex.getUsername(SlotIndex.claim(date)));
+        assertEquals(-1, SlotIndex.claim(date));
+    }
+
+    private static Set<String> freeCaregivers(Date date, int count) {
+        Set<String> usernames = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            String username = EmbeddedDatabase.name("slot_c");
+            SlotIndex.addFree(date, username);
+            usernames.add(username);
+        }
+        return usernames;
+    }
+
+    // claims until nobody is left, failing on a caregiver claimed twice
+    private static Set<String> claimConcurrently(Date date, int threads) throws Exception {
+        Set<String> claimed = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> workers = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                workers.add(executor.submit(() -> {
+                    start.await();
+                    int id;
+                    while ((id = SlotIndex.claim(date)) >= 0) {
+                        if (!claimed.add(SlotIndex.getUsername(id))) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            start.countDown();
+            for (Future<Boolean> worker : workers) {
+                assertTrue(worker.get(), "caregiver claimed twice");
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return claimed;
+    }
+}
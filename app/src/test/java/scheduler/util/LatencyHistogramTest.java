@@ -0,0 +1,115 @@
+package scheduler.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    @Test
+    void bucketsCoverEveryValueWithoutGaps() {
+        assertEquals(0, LatencyHistogram.upperBound(0));
+        for (int bucket = 1; bucket < LatencyHistogram.getBuckets(); bucket++) {
+            long lower = LatencyHistogram.upperBound(bucket - 1) + 1;
+            long upper = LatencyHistogram.upperBound(bucket);
+            assertTrue(upper >= lower, "bucket " + bucket);
+            // a bucket is at most 1/16 of the values it holds wide
+            assertTrue(upper - lower <= lower / 16, "bucket " + bucket);
+
+            LatencyHistogram histogram = new LatencyHistogram();
+            histogram.record(lower);
+            histogram.record(upper);
+            assertEquals(2, histogram.getBucketCount(bucket), "bucket " + bucket);
+        }
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBound(LatencyHistogram.getBuckets() - 1));
+    }
+
+    @Test
+    void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 20; value++) {
+            histogram.record(value);
+        }
+        assertEquals(1, histogram.getPercentile(0));
+        assertEquals(10, histogram.getPercentile(50));
+        assertEquals(18, histogram.getPercentile(90));
+        assertEquals(20, histogram.getPercentile(100));
+        assertEquals(20, histogram.getMax());
+        assertEquals(10.5, histogram.getMean());
+    }
+
+    @Test
+    void percentilesOfUniformValuesAreWithinABucket() {
+        long[] values = new long[100_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i + 1;
+        }
+        checkPercentiles(values);
+    }
+
+    @Test
+    void percentilesOfLongTailedValuesAreWithinABucket() {
+        // mostly fast with a few slow ones, like command latencies
+        Random random = new Random(42);
+        long[] values = new long[100_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) (200 * -Math.log(1 - random.nextDouble()));
+            if (i % 1000 == 0) {
+                values[i] += 1_000_000 + random.nextInt(5_000_000);
+            }
+        }
+        checkPercentiles(values);
+    }
+
+    @Test
+    void percentileDoesNotExceedTheMaximum() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        assertTrue(LatencyHistogram.upperBound(bucketOf(histogram)) > 1000);
+        assertEquals(1000, histogram.getPercentile(50));
+        assertEquals(1000, histogram.getPercentile(100));
+        assertEquals(1000, histogram.getMax());
+    }
+
+    @Test
+    void negativeValuesCountAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(99));
+        assertEquals(0, histogram.getMean());
+        histogram.record(-5);
+        assertEquals(1, histogram.getBucketCount(0));
+        assertEquals(0, histogram.getSum());
+        assertEquals(0, histogram.getMax());
+    }
+
+    // every percentile is at least the exact one and no more than a bucket above it
+    private static void checkPercentiles(long[] values) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value : values) {
+            histogram.record(value);
+        }
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        assertEquals(sorted[sorted.length - 1], histogram.getMax());
+        assertEquals(values.length, histogram.getCount());
+        for (double percentile : new double[]{1, 10, 50, 90, 99, 99.9, 100}) {
+            long exact = sorted[(int) Math.ceil(sorted.length * percentile / 100) - 1];
+            long estimate = histogram.getPercentile(percentile);
+            assertTrue(estimate >= exact, percentile + ": " + estimate + " < " + exact);
+            assertTrue(estimate - exact <= exact / 16, percentile + ": " + estimate + " vs " + exact);
+        }
+    }
+
+    private static int bucketOf(LatencyHistogram histogram) {
+        for (int bucket = 0; bucket < LatencyHistogram.getBuckets(); bucket++) {
+            if (histogram.getBucketCount(bucket) > 0) {
+                return bucket;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,115 @@
+package scheduler.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PasswordHashTest {
+
+    // made by the original Util.generateHash (PBKDF2WithHmacSHA1, 10 iterations, 16-bit key) and
+    // stored zero-padded in a BINARY(16) column
+    public static final String LEGACY_PASSWORD = "Legacy!Passw0rd";
+    public static final byte[] LEGACY_SALT = hex("031425364758697a8b9cadbecfe0f102");
+    public static final byte[] LEGACY_HASH = Arrays.copyOf(hex("b095"), 16);
+
+    @Test
+    void recordLayout() {
+        PasswordHash created = PasswordHash.create("Passw0rd!");
+        byte[] bytes = created.encode();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        assertEquals(1, buffer.get());
+        assertEquals(1, buffer.get());
+        assertEquals(created.getIterations(), buffer.getInt());
+        assertEquals(16, buffer.get());
+        byte[] salt = new byte[16];
+        buffer.get(salt);
+        assertArrayEquals(created.getSalt(), salt);
+        assertEquals(32, buffer.get());
+        assertEquals(32, buffer.remaining());
+        assertEquals(8 + 16 + 32, bytes.length);
+    }
+
+    @Test
+    void encodedHashDecodesAndVerifies() {
+        PasswordHash decoded = PasswordHash.decode(PasswordHash.create("Passw0rd!").encode());
+        assertNotNull(decoded);
+        assertEquals(PasswordHash.Algorithm.PBKDF2_SHA1, decoded.getAlgorithm());
+        assertTrue(decoded.matches("Passw0rd!"));
+        assertFalse(decoded.matches("Passw0rd?"));
+        assertFalse(decoded.needsRehash());
+    }
+
+    @Test
+    void corruptOrShortInputIsNotARecord() {
+        byte[] valid = PasswordHash.create("Passw0rd!").encode();
+        assertNull(PasswordHash.decode(null));
+        assertNull(PasswordHash.decode(new byte[0]));
+        assertNull(PasswordHash.decode(Arrays.copyOf(valid, valid.length - 1)));
+        assertNull(PasswordHash.decode(Arrays.copyOf(valid, valid.length + 1)));
+        assertNull(PasswordHash.decode(with(valid, 0, (byte) 2)));
+        // unknown algorithm
+        assertNull(PasswordHash.decode(with(valid, 1, (byte) 9)));
+        // no iterations
+        assertNull(PasswordHash.decode(with(with(with(with(valid, 2, (byte) 0), 3, (byte) 0), 4, (byte) 0), 5, (byte) 0)));
+        // salt longer than the record
+        assertNull(PasswordHash.decode(with(valid, 6, (byte) 100)));
+        // salt too short to be one of ours
+        assertNull(PasswordHash.decode(with(valid, 6, (byte) 4)));
+        // a hash from before records existed, even one starting with the version byte
+        assertNull(PasswordHash.decode(LEGACY_HASH));
+        assertNull(PasswordHash.decode(with(LEGACY_HASH, 0, (byte) 1)));
+    }
+
+    @Test
+    void legacyHashFromTheOriginalCodeVerifies() {
+        assertArrayEquals(hex("b095"), Util.generateHash(LEGACY_PASSWORD, LEGACY_SALT));
+        assertTrue(PasswordHash.matchesLegacy(LEGACY_PASSWORD, LEGACY_SALT, LEGACY_HASH));
+        // also as it would come out of a column that is not padded
+        assertTrue(PasswordHash.matchesLegacy(LEGACY_PASSWORD, LEGACY_SALT, hex("b095")));
+        assertFalse(PasswordHash.matchesLegacy("Legacy!Passw0rd?", LEGACY_SALT, LEGACY_HASH));
+        assertFalse(PasswordHash.matchesLegacy(LEGACY_PASSWORD, null, LEGACY_HASH));
+        assertFalse(PasswordHash.matchesLegacy(LEGACY_PASSWORD, LEGACY_SALT, null));
+        assertFalse(PasswordHash.matchesLegacy(LEGACY_PASSWORD, LEGACY_SALT, new byte[1]));
+    }
+
+    // a record as an older configuration would have written it
+    public static byte[] record(String password, int iterations) {
+        byte[] salt = new byte[16];
+        Arrays.fill(salt, (byte) 7);
+        byte[] hash = new PasswordHasher("PBKDF2WithHmacSHA1", iterations, 256, 16)
+                .generateHash(password, salt, iterations, 256);
+        ByteBuffer buffer = ByteBuffer.allocate(8 + 16 + 32);
+        buffer.put((byte) 1).put((byte) 1).putInt(iterations).put((byte) 16).put(salt).put((byte) 32).put(hash);
+        return buffer.array();
+    }
+
+    @Test
+    void olderParametersNeedARehash() {
+        PasswordHash older = PasswordHash.decode(record("Passw0rd!", 3));
+        assertNotNull(older);
+        assertTrue(older.matches("Passw0rd!"));
+        assertTrue(older.needsRehash());
+    }
+
+    private static byte[] with(byte[] bytes, int index, byte value) {
+        byte[] copy = bytes.clone();
+        copy[index] = value;
+        return copy;
+    }
+
+    private static byte[] hex(String text) {
+        byte[] bytes = new byte[text.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(text.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,72 @@
+package scheduler.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PasswordPolicyTest {
+
+    // one password per rule on either side of it, plus characters the rules do not know
+    private static final List<String> passwords = Arrays.asList(
+            "Abcdef1!", "Abcde1!", "abcdef1!", "ABCDEF1!", "Abcdefg!", "Abcdefg1",
+            "Abcdef1@", "Abcdef1#", "Abcdef1?", "Abcdef1$", "Abcdef1 ", "Äbcdef1!", "Abcdéf1!",
+            "Abcdef１!", "Password1!", "12345678", "!@#?!@#?", "", "A1!a", "aB3?xxxxxxxxxxxxxxxxxxxx");
+
+    // the check create_patient and create_caregiver made before the policy existed
+    private static boolean baseline(String password) {
+        return password.length() >= 8 && password.matches(".*[A-Z].*") && password.matches(".*[a-z].*") &&
+                password.matches(".*[0-9].*") && password.matches(".*[!@#?].*");
+    }
+
+    @Test
+    void defaultRulesMatchTheOldCheck() {
+        PasswordPolicy policy = new PasswordPolicy.PasswordPolicyBuilder().build();
+        for (String password : passwords) {
+            assertEquals(baseline(password), policy.isStrong(password), password);
+        }
+    }
+
+    @Test
+    void eachRuleCanBeSwitchedOff() {
+        assertTrue(new PasswordPolicy.PasswordPolicyBuilder().minLength(4).build().isStrong("A1!a"));
+        assertTrue(new PasswordPolicy.PasswordPolicyBuilder().requireUpper(false).build().isStrong("abcdef1!"));
+        assertTrue(new PasswordPolicy.PasswordPolicyBuilder().requireLower(false).build().isStrong("ABCDEF1!"));
+        assertTrue(new PasswordPolicy.PasswordPolicyBuilder().requireDigit(false).build().isStrong("Abcdefg!"));
+        assertTrue(new PasswordPolicy.PasswordPolicyBuilder().specialChars("").build().isStrong("Abcdefg1"));
+        assertTrue(new PasswordPolicy.PasswordPolicyBuilder().specialChars("$").build().isStrong("Abcdef1$"));
+        assertFalse(new PasswordPolicy.PasswordPolicyBuilder().specialChars("$").build().isStrong("Abcdef1!"));
+    }
+
+    @Test
+    void denylistIgnoresCaseAndBlankLines(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("denylist.txt");
+        Files.write(file, Arrays.asList("Password1!", "", "  Welcome1?  "), StandardCharsets.UTF_8);
+        Set<String> denylist = PasswordPolicy.loadDenylist(file.toString());
+        assertEquals(2, denylist.size());
+
+        PasswordPolicy policy = new PasswordPolicy.PasswordPolicyBuilder().denylist(denylist).build();
+        assertFalse(policy.isStrong("Password1!"));
+        assertFalse(policy.isStrong("PASSWORD1!"));
+        assertFalse(policy.isStrong("welcome1?"));
+        assertTrue(policy.isStrong("Abcdef1!"));
+    }
+
+    @Test
+    void missingDenylistIsReported(@TempDir Path dir) {
+        String file = dir.resolve("missing.txt").toString();
+        UncheckedIOException e = assertThrows(UncheckedIOException.class, () -> PasswordPolicy.loadDenylist(file));
+        assertTrue(e.getMessage().contains(file));
+    }
+}
@@ -0,0 +1,96 @@
+package scheduler.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import scheduler.Command;
+import scheduler.CommandLine;
+import scheduler.Scheduler;
+import scheduler.util.PasswordPolicy;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Per-command overhead that does not touch the database: password strength checks and
+// turning an input line into a command.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandBenchmark {
+
+    // fields rather than constants, so the JIT cannot fold them into the benchmarks
+    private String line = "upload_availability 2026-01-01 2026-12-31 MON,WED,FRI";
+    private String strong = "Passw0rd!Secure";
+    private String weak = "password1234";
+    private CommandLine commandLine;
+    private PasswordPolicy policy;
+    private PasswordPolicy denylistPolicy;
+
+    @Setup
+    public void setUp() {
+        commandLine = new CommandLine();
+        policy = PasswordPolicy.getDefault();
+        Set<String> denylist = new HashSet<>();
+        for (int i = 0; i < 100_000; i++) {
+            denylist.add("passw0rd!" + i);
+        }
+        denylistPolicy = new PasswordPolicy.PasswordPolicyBuilder().denylist(denylist).build();
+    }
+
+    // the regex chain the password check used to be
+    private static boolean matchesRegexes(String password) {
+        return password.length() >= 8 && password.matches(".*[A-Z].*") && password.matches(".*[a-z].*") &&
+                password.matches(".*[0-9].*") && password.matches(".*[!@#?].*");
+    }
+
+    @Benchmark
+    public boolean passwordRegexesStrong() {
+        return matchesRegexes(strong);
+    }
+
+    @Benchmark
+    public boolean passwordRegexesWeak() {
+        return matchesRegexes(weak);
+    }
+
+    @Benchmark
+    public boolean passwordPolicyStrong() {
+        return policy.isStrong(strong);
+    }
+
+    @Benchmark
+    public boolean passwordPolicyWeak() {
+        return policy.isStrong(weak);
+    }
+
+    @Benchmark
+    public boolean passwordPolicyDenylist() {
+        return denylistPolicy.isStrong(strong);
+    }
+
+    @Benchmark
+    public String[] tokenizeSplit() {
+        return line.split(" ");
+    }
+
+    @Benchmark
+    public int tokenizeCommandLine() {
+        return commandLine.parse(line).size();
+    }
+
+    @Benchmark
+    public Command findCommand() {
+        return Scheduler.getCommands().find(commandLine.parse(line));
+    }
+}
@@ -0,0 +1,112 @@
+package scheduler.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import scheduler.Scheduler;
+import scheduler.Session;
+import scheduler.db.ConnectionManager;
+import scheduler.db.DataSourceConfig;
+import scheduler.service.InventoryCache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+// Whole commands run through Scheduler.execute like a console session would, against the
+// embedded database unless the DataSource environment variable names another profile. Every
+// run creates its own users and vaccine, so it can be pointed at a database that already has
+// data; it should not be pointed at production.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    private static final String password = "Bench!Passw0rd";
+
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private final PrintStream out = new PrintStream(output, true, StandardCharsets.UTF_8);
+    private final Session patientSession = new Session(out);
+    private final Session loginSession = new Session(out);
+    private String patient;
+    private String vaccine;
+    private LocalDate day;
+
+    @Setup
+    public void setUp() {
+        String profile = System.getenv("DataSource");
+        ConnectionManager.configure(DataSourceConfig.fromEnvironment(profile == null ? "embedded" : profile));
+
+        String prefix = "bench" + Long.toString(System.currentTimeMillis(), 36);
+        String caregiver = prefix + "_caregiver";
+        patient = prefix + "_patient";
+        vaccine = prefix + "_vaccine";
+        day = LocalDate.now().plusYears(1);
+
+        Session caregiverSession = new Session(out);
+        expect(caregiverSession, "create_caregiver " + caregiver + " " + password, "Created user");
+        expect(caregiverSession, "login_caregiver " + caregiver + " " + password, "Logged in");
+        expect(caregiverSession, "add_doses " + vaccine + " 1000000", "Doses updated");
+        expect(caregiverSession, "upload_availability " + day, "Availability uploaded");
+        expect(patientSession, "create_patient " + patient + " " + password, "Created user");
+        expect(patientSession, "login_patient " + patient + " " + password, "Logged in");
+    }
+
+    @TearDown
+    public void tearDown() {
+        InventoryCache.shutdown();
+        ConnectionManager.shutdown();
+    }
+
+    @Benchmark
+    public String searchCaregiverSchedule() {
+        return execute(patientSession, "search_caregiver_schedule " + day);
+    }
+
+    @Benchmark
+    public String loginAndLogout() {
+        execute(loginSession, "login_patient " + patient + " " + password);
+        return execute(loginSession, "logout");
+    }
+
+    // the appointment is cancelled right away so the caregiver's slot is free for the next one
+    @Benchmark
+    public String reserveAndCancel() {
+        String reserved = execute(patientSession, "reserve " + day + " " + vaccine);
+        int start = reserved.indexOf("Appointment ID: ");
+        if (start < 0) {
+            throw new IllegalStateException("Reservation failed: " + reserved);
+        }
+        start += "Appointment ID: ".length();
+        String id = reserved.substring(start, reserved.indexOf(',', start));
+        return execute(patientSession, "cancel " + id);
+    }
+
+    // runs the command and returns what it printed
+    private String execute(Session session, String command) {
+        output.reset();
+        Scheduler.execute(session, command);
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    // runs a setup command that has to succeed
+    private void expect(Session session, String command, String expected) {
+        String result = execute(session, command);
+        if (!result.startsWith(expected)) {
+            throw new IllegalStateException(command + " failed: " + result);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package scheduler.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import scheduler.util.Util;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+// Per-login hashing cost: the way Util used to hash (a new SecureRandom and a
+// SecretKeyFactory lookup on every call) against the reusable PasswordHasher.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashBenchmark {
+
+    // fields rather than constants, so the JIT cannot fold them into the benchmarks
+    private String password = "Passw0rd!";
+    private byte[] salt;
+    private int iterations;
+    private String algorithm;
+
+    @Setup
+    public void setUp() {
+        salt = Util.generateSalt();
+        iterations = Util.getHasher().getIterations();
+        algorithm = Util.getHasher().getAlgorithm();
+    }
+
+    @Benchmark
+    public byte[] generateSaltNewSecureRandom() {
+        byte[] s = new byte[16];
+        new SecureRandom().nextBytes(s);
+        return s;
+    }
+
+    @Benchmark
+    public byte[] generateSaltShared() {
+        return Util.generateSalt();
+    }
+
+    @Benchmark
+    public byte[] generateHashFactoryLookup() throws GeneralSecurityException {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, 16);
+        return SecretKeyFactory.getInstance(algorithm).generateSecret(spec).getEncoded();
+    }
+
+    @Benchmark
+    public byte[] generateHashThreadLocalFactory() {
+        return Util.generateHash(password, salt);
+    }
+}
@@ -0,0 +1,309 @@
+package scheduler.bench;
+
+import scheduler.Scheduler;
+import scheduler.Session;
+import scheduler.db.ConnectionManager;
+import scheduler.service.InventoryCache;
+import scheduler.util.LatencyHistogram;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Simulates a vaccination-day rush against the configured database. It creates caregivers with
+// availability for a number of days, stocks vaccines and creates patients, all through the
+// regular command handlers, then has worker threads log patients in, search, reserve, show
+// their appointments and log out again. At the end it prints throughput, latency and the outcomes
+// per command and checks the data for double bookings, negative doses and lost doses or slots;
+// a command answering with an error counts as a violation as well. With a rate set, latency is
+// measured from the time a command was due, so a stalled server is not hidden by commands that
+// were never sent.
+// Settings are system properties, e.g. -Dload.patients=1000 -Dload.threads=32 -Dload.rate=500.
+// Every run uses its own user and vaccine names, but it should not be pointed at production.
+public class LoadGenerator {
+
+    private static final int patients = Integer.getInteger("load.patients", 200);
+    private static final int caregivers = Integer.getInteger("load.caregivers", 20);
+    private static final int days = Integer.getInteger("load.days", 14);
+    private static final int vaccines = Integer.getInteger("load.vaccines", 2);
+    private static final int doses = Integer.getInteger("load.doses", 100);
+    private static final int threads = Integer.getInteger("load.threads", 16);
+    // commands per second over all threads, 0 runs them as fast as possible
+    private static final int rate = Integer.getInteger("load.rate", 0);
+    private static final int seconds = Integer.getInteger("load.seconds", 30);
+
+    private static final String password = "Load!Passw0rd";
+
+    private final String prefix = "load" + Long.toString(System.currentTimeMillis(), 36);
+    private final LocalDate firstDay = LocalDate.now().plusYears(1);
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    // outcome counts per command
+    private final Map<String, Map<String, LongAdder>> results = new ConcurrentHashMap<>();
+    private final AtomicLong nextSlot = new AtomicLong();
+    private final long intervalNanos = rate > 0 ? 1_000_000_000L / rate : 0;
+
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator = new LoadGenerator();
+        int violations;
+        try {
+            // the schema is set up here rather than in the first command's metrics
+            ConnectionManager.getPool();
+            generator.setUp();
+            generator.drive();
+            violations = generator.errors() + generator.check();
+        } finally {
+            InventoryCache.shutdown();
+            ConnectionManager.shutdown();
+        }
+        System.exit(violations == 0 ? 0 : 1);
+    }
+
+    private void setUp() throws Exception {
+        System.out.println("Setting up " + caregivers + " caregivers, " + days + " days, " + vaccines +
+                " vaccines and " + patients + " patients as " + prefix + "*");
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> tasks = new ArrayList<>();
+        LocalDate lastDay = firstDay.plusDays(days - 1);
+        for (int i = 0; i < caregivers; i++) {
+            String username = prefix + "c" + i;
+            tasks.add(executor.submit(() -> {
+                Client client = new Client();
+                client.expect("create_caregiver " + username + " " + password, "Created user");
+                client.expect("login_caregiver " + username + " " + password, "Logged in");
+                client.expect("upload_availability " + firstDay + " " + lastDay, "Availability uploaded");
+                return null;
+            }));
+        }
+        for (int i = 0; i < patients; i++) {
+            String username = prefix + "p" + i;
+            tasks.add(executor.submit(() -> {
+                new Client().expect("create_patient " + username + " " + password, "Created user");
+                return null;
+            }));
+        }
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+        executor.shutdown();
+
+        Client stocker = new Client();
+        stocker.expect("login_caregiver " + prefix + "c0 " + password, "Logged in");
+        for (int v = 0; v < vaccines; v++) {
+            stocker.expect("add_doses " + prefix + "v" + v + " " + doses, "Doses updated");
+        }
+        System.out.println(String.format("Setup took %.1f s", (System.nanoTime() - start) / 1e9));
+    }
+
+    private void drive() throws Exception {
+        System.out.println("Driving " + threads + " threads for " + seconds + " s" +
+                (rate > 0 ? " at " + rate + " commands/sec" : ""));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+        nextSlot.set(start);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            workers.add(executor.submit(() -> {
+                Client client = new Client();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    String username = prefix + "p" + random.nextInt(patients);
+                    LocalDate day = firstDay.plusDays(random.nextInt(days));
+                    // a refused login leaves nothing to do for the other commands
+                    if (!client.timed("login_patient", "login_patient " + username + " " + password)
+                            .equals("ok")) {
+                        continue;
+                    }
+                    client.timed("search_caregiver_schedule", "search_caregiver_schedule " + day);
+                    client.timed("reserve", "reserve " + day + " " + prefix + "v" + random.nextInt(vaccines));
+                    client.timed("show_appointments", "show_appointments");
+                    client.timed("logout", "logout");
+                }
+                return null;
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        executor.shutdown();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        long total = 0;
+        System.out.println(String.format("%-28s %9s %10s %10s %10s %10s", "command", "count", "per sec",
+                "p50 ms", "p99 ms", "max ms"));
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(latencies).entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            total += histogram.getCount();
+            System.out.println(String.format("%-28s %9d %10.1f %10.2f %10.2f %10.2f", entry.getKey(),
+                    histogram.getCount(), histogram.getCount() / elapsed, histogram.getPercentile(50) / 1000.0,
+                    histogram.getPercentile(99) / 1000.0, histogram.getMax() / 1000.0));
+        }
+        System.out.println(String.format("%-28s %9d %10.1f", "total", total, total / elapsed));
+        for (Map.Entry<String, Map<String, LongAdder>> entry : new TreeMap<>(results).entrySet()) {
+            System.out.println(entry.getKey() + " results: " + new TreeMap<>(entry.getValue()));
+        }
+    }
+
+    // commands that answered with an error, they count as violations
+    private int errors() {
+        long errors = 0;
+        for (Map<String, LongAdder> outcomes : results.values()) {
+            LongAdder count = outcomes.get("error");
+            errors += count == null ? 0 : count.sum();
+        }
+        System.out.println("commands with errors: " + errors);
+        return (int) Math.min(errors, Integer.MAX_VALUE);
+    }
+
+    // returns the number of violations found
+    private int check() throws SQLException {
+        // doses added through the cache have to be in the database before it is checked
+        InventoryCache.flush();
+        String pattern = prefix + "%";
+        int violations = 0;
+        violations += report("double bookings",
+                "SELECT COUNT(*) FROM (SELECT CaregiverUsername, Time FROM Appointments " +
+                "WHERE CaregiverUsername LIKE ? GROUP BY CaregiverUsername, Time HAVING COUNT(*) > 1) D",
+                pattern);
+        violations += report("vaccines with negative doses",
+                "SELECT COUNT(*) FROM Vaccines WHERE Name LIKE ? AND Doses < 0", pattern);
+        // every dose is either left or taken by an appointment
+        violations += report("vaccines with lost doses",
+                "SELECT COUNT(*) FROM Vaccines V WHERE V.Name LIKE ? AND V.Doses + " +
+                "(SELECT COUNT(*) FROM Appointments A WHERE A.VaccineName = V.Name) <> " + doses,
+                pattern);
+        // a booked slot must be gone from Availabilities
+        violations += report("booked slots still available",
+                "SELECT COUNT(*) FROM Appointments A JOIN Availabilities V " +
+                "ON V.Username = A.CaregiverUsername AND V.Time = A.Time WHERE A.CaregiverUsername LIKE ?",
+                pattern);
+        System.out.println(violations == 0 ? "No violations found." : violations + " violations found!");
+        return violations;
+    }
+
+    private int report(String name, String query, String pattern) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        Connection con = cm.createConnection();
+        if (con == null) {
+            throw new SQLException("No database connection available");
+        }
+
+        try (PreparedStatement statement = con.prepareStatement(query)) {
+            statement.setString(1, pattern);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                int found = resultSet.next() ? resultSet.getInt(1) : 0;
+                System.out.println(name + ": " + found);
+                return found;
+            }
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    // the outcome of a command from its output; anything unexpected is an error
+    private static String classify(String name, String output) {
+        switch (name) {
+            case "login_patient":
+                if (output.startsWith("Logged in as")) {
+                    return "ok";
+                } else if (output.startsWith("Too many logins")) {
+                    return "busy";
+                }
+                break;
+            case "search_caregiver_schedule":
+                if (output.startsWith("Available caregivers") || output.startsWith("No available caregivers")) {
+                    return "ok";
+                }
+                break;
+            case "reserve":
+                if (output.startsWith("Appointment ID")) {
+                    return "reserved";
+                } else if (output.startsWith("No available caregiver")) {
+                    return "no caregiver";
+                } else if (output.startsWith("Not enough available doses")) {
+                    return "no doses";
+                }
+                break;
+            case "show_appointments":
+                if (output.startsWith("Appointments:") || output.startsWith("No appointments")) {
+                    return "ok";
+                }
+                break;
+            case "logout":
+                if (output.startsWith("Successfully logged out")) {
+                    return "ok";
+                }
+                break;
+            default:
+                break;
+        }
+        return "error";
+    }
+
+    // waits for the next free slot when a rate is set; returns the time the command was due
+    private long pace() {
+        if (intervalNanos == 0) {
+            return System.nanoTime();
+        }
+        long slot = nextSlot.getAndAdd(intervalNanos);
+        long wait = slot - System.nanoTime();
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return slot;
+    }
+
+    // a session of its own whose output is kept for inspection
+    private class Client {
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        private final Session session = new Session(new PrintStream(output, true, StandardCharsets.UTF_8));
+
+        String execute(String command) {
+            output.reset();
+            Scheduler.execute(session, command);
+            return output.toString(StandardCharsets.UTF_8);
+        }
+
+        // runs a command, records its latency in microseconds from the time it was due and its
+        // outcome; returns the outcome
+        String timed(String name, String command) {
+            long start = pace();
+            String outcome = classify(name, execute(command));
+            latencies.computeIfAbsent(name, n -> new LatencyHistogram())
+                    .record((System.nanoTime() - start) / 1000);
+            results.computeIfAbsent(name, n -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(outcome, o -> new LongAdder()).increment();
+            return outcome;
+        }
+
+        // runs a setup command that has to succeed
+        void expect(String command, String expected) {
+            String result = execute(command);
+            if (!result.startsWith(expected)) {
+                throw new IllegalStateException(command + " failed: " + result);
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package scheduler.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Compares two JMH result files written with -rf csv and exits with 1 if a benchmark got more
+// than the tolerance (default 10 percent) slower, e.g.
+//   java -cp benchmarks.jar scheduler.bench.RegressionCheck baseline.csv results.csv 10
+// Only average-time results are compared, where a larger score is slower.
+public class RegressionCheck {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: RegressionCheck <baseline.csv> <results.csv> [tolerance_percent]");
+            System.exit(2);
+        }
+        Map<String, Double> baseline = read(args[0]);
+        Map<String, Double> results = read(args[1]);
+        double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+
+        int regressions = 0;
+        for (Map.Entry<String, Double> entry : results.entrySet()) {
+            Double before = baseline.get(entry.getKey());
+            if (before == null) {
+                continue;
+            }
+            double change = (entry.getValue() - before) / before * 100;
+            boolean regressed = change > tolerance;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.println(String.format("%-60s %+7.1f%%%s", entry.getKey(), change,
+                    regressed ? " REGRESSION" : ""));
+        }
+        if (regressions > 0) {
+            System.out.println(regressions + " benchmark(s) regressed by more than " + tolerance + "%");
+            System.exit(1);
+        }
+    }
+
+    // benchmark name to score, for the "avgt" rows
+    private static Map<String, Double> read(String file) throws IOException {
+        Map<String, Double> scores = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8)) {
+            String[] fields = line.split(",");
+            if (fields.length < 5 || !unquote(fields[1]).equals("avgt")) {
+                continue;
+            }
+            scores.put(unquote(fields[0]), Double.parseDouble(unquote(fields[4])));
+        }
+        return scores;
+    }
+
+    private static String unquote(String field) {
+        return field.replace("\"", "").trim();
+    }
+}
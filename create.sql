@@ -1,13 +1,16 @@
+-- Hash holds a PasswordHash record, Salt is only set for hashes created before those records;
+-- an existing database is upgraded with ALTER TABLE Caregivers ALTER COLUMN Hash VARBINARY(255)
 CREATE TABLE Caregivers (
     Username varchar(255),
     Salt BINARY(16),
-    Hash BINARY(16),
+    Hash VARBINARY(255),
     PRIMARY KEY (Username)
 );
 
 CREATE TABLE Availabilities (
     Time date,
     Username varchar(255) REFERENCES Caregivers,
+    -- clustered on (Time, Username): the per-date caregiver search is a covered range scan
     PRIMARY KEY (Time, Username)
 );
 
@@ -17,10 +20,11 @@ CREATE TABLE Vaccines (
     PRIMARY KEY (Name)
 );
 
+-- same as Caregivers: ALTER TABLE Patients ALTER COLUMN Hash VARBINARY(255) for an existing database
 CREATE TABLE Patients (
 	Username varchar(255),
 	Salt BINARY(16),
-	Hash BINARY(16),
+	Hash VARBINARY(255),
 	PRIMARY KEY (Username)
 );
 
@@ -33,3 +37,11 @@ CREATE TABLE Appointments (
 	PRIMARY KEY (AppointmentID)
 );
 
+-- show_appointments pages through a user's appointments by ID; both indexes cover the query
+CREATE INDEX AppointmentsByPatient ON Appointments (PatientUsername, AppointmentID)
+    INCLUDE (CaregiverUsername, VaccineName, Time);
+CREATE INDEX AppointmentsByCaregiver ON Appointments (CaregiverUsername, AppointmentID)
+    INCLUDE (PatientUsername, VaccineName, Time);
+
+-- each value reserves a block of appointment IDs for one scheduler process
+CREATE SEQUENCE AppointmentIdBlocks START WITH 1 INCREMENT BY 1;